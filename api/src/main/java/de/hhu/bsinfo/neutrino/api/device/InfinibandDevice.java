@@ -19,16 +19,35 @@ public interface InfinibandDevice {
      */
     DeviceAttributes getDeviceAttributes();
 
+    /**
+     * The NUMA node this device is attached to or {@link de.hhu.bsinfo.neutrino.util.NumaUtil#UNKNOWN_NODE}.
+     */
+    int getNumaNode();
+
     /**
      * Creates a new {@link RegisteredBuffer} used for RDMA operations.
      */
     RegisteredBuffer allocateMemory(int capacity) throws IOException;
 
     /**
-     * Creates a new {@link RegisteredBuffer} used for RDMA operations.
+     * Creates a new {@link RegisteredBuffer} used for RDMA operations. Using {@link MemoryAlignment#HUGE_PAGE}
+     * backs the buffer with huge pages and rounds its capacity up to a multiple of the huge page size.
      */
     RegisteredBuffer allocateMemory(int capacity, MemoryAlignment alignment) throws IOException;
 
+    /**
+     * Returns a {@link RegisteredBuffer} for the specified off-heap memory, reusing cached memory regions
+     * where possible. The buffer must be released once all operations using it completed. Cached regions
+     * only grant local access, so the buffer has no remote key and can not be accessed by remotes.
+     */
+    RegisteredBuffer register(long address, int length) throws IOException;
+
+    /**
+     * Drops cached memory regions overlapping the specified range. Memory passed to {@link #register(long, int)}
+     * must be invalidated after all its buffers were released and before it is unmapped or freed.
+     */
+    void invalidate(long address, long length);
+
     /**
      * Wraps the specified chunk of memory within a {@link MemoryRegion}.
      */
@@ -11,4 +11,14 @@ public interface InfinibandDeviceConfig {
      * The selected device's port number.
      */
     byte getPortNumber();
+
+    /**
+     * The maximum number of bytes pinned by the registration cache.
+     */
+    long getRegistrationCacheSize();
+
+    /**
+     * The granularity the registration cache registers memory with.
+     */
+    long getRegistrationGranularity();
 }
@@ -4,9 +4,12 @@ import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDeviceConfig;
 import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
 import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+import de.hhu.bsinfo.neutrino.api.util.RegistrationCache;
 import de.hhu.bsinfo.neutrino.api.util.UnsafeRegisteredBuffer;
 import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
 import de.hhu.bsinfo.neutrino.verbs.*;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.stereotype.Component;
@@ -18,6 +21,24 @@ import java.util.Objects;
 @Component
 public class InternalInfinibandDevice implements InfinibandDevice {
 
+    /**
+     * Access flags for buffers allocated by the device, which may be targeted by remote atomic operations.
+     */
+    private static final AccessFlag[] BUFFER_ACCESS_FLAGS = {
+            AccessFlag.LOCAL_WRITE,
+            AccessFlag.REMOTE_READ,
+            AccessFlag.REMOTE_WRITE,
+            AccessFlag.REMOTE_ATOMIC,
+            AccessFlag.MW_BIND
+    };
+
+    /**
+     * Access flags for cached registrations, which cover memory around the requested range and must therefore never be reachable by remotes.
+     */
+    private static final AccessFlag[] CACHE_ACCESS_FLAGS = {
+            AccessFlag.LOCAL_WRITE
+    };
+
     /**
      * The device's context.
      */
@@ -38,11 +59,31 @@ public class InternalInfinibandDevice implements InfinibandDevice {
      */
     private final ProtectionDomain protectionDomain;
 
-    public InternalInfinibandDevice(InfinibandDeviceConfig config) throws IOException {
+    /**
+     * The NUMA node this device is attached to.
+     */
+    private final int numaNode;
+
+    /**
+     * Caches memory regions for memory registered using {@link #register(long, int)}.
+     */
+    private final RegistrationCache registrationCache;
+
+    /**
+     * The registration cache's metrics.
+     */
+    private final RegistrationMetrics registrationMetrics;
+
+    public InternalInfinibandDevice(InfinibandDeviceConfig config, MeterRegistry meterRegistry) throws IOException {
         context = Context.openDevice(config.getDeviceNumber());
         deviceAttributes = context.queryDevice();
         portAttributes = context.queryPort(config.getPortNumber());
         protectionDomain = context.allocateProtectionDomain();
+        numaNode = NumaUtil.getDeviceNode(context.getDeviceName());
+        log.debug("Device {} is attached to NUMA node {}", context.getDeviceName(), numaNode);
+
+        registrationCache = new RegistrationCache(RegistrationCache.memoryRegions(this::wrapRegion), config.getRegistrationGranularity(), config.getRegistrationCacheSize(), CACHE_ACCESS_FLAGS);
+        registrationMetrics = new RegistrationMetrics(meterRegistry, registrationCache);
     }
 
     @Override
@@ -55,6 +96,11 @@ public class InternalInfinibandDevice implements InfinibandDevice {
         return deviceAttributes;
     }
 
+    @Override
+    public int getNumaNode() {
+        return numaNode;
+    }
+
     @Override
     public RegisteredBuffer allocateMemory(int capacity) throws IOException {
         return allocateMemory(capacity, MemoryAlignment.CACHE);
@@ -63,10 +109,20 @@ public class InternalInfinibandDevice implements InfinibandDevice {
     @Override
     public RegisteredBuffer allocateMemory(int capacity, MemoryAlignment alignment) throws IOException {
         var memory = MemoryUtil.allocateAligned(capacity, alignment);
-        var region = wrapRegion(memory.addressOffset(), memory.capacity(), MemoryRegion.DEFAULT_ACCESS_FLAGS);
+        var region = wrapRegion(memory.addressOffset(), memory.capacity(), BUFFER_ACCESS_FLAGS);
         return new UnsafeRegisteredBuffer(memory, region);
     }
 
+    @Override
+    public RegisteredBuffer register(long address, int length) throws IOException {
+        return registrationCache.acquire(address, length);
+    }
+
+    @Override
+    public void invalidate(long address, long length) {
+        registrationCache.invalidate(address, length);
+    }
+
     @Override
     public MemoryRegion wrapRegion(long handle, long capacity, AccessFlag... accessFlags) throws IOException {
         return protectionDomain.registerMemoryRegion(handle, capacity, accessFlags);
@@ -20,4 +20,14 @@ public class InternalInfinibandDeviceConfig implements InfinibandDeviceConfig {
      * The selected device's port number.
      */
     private byte portNumber = 1;
+
+    /**
+     * The maximum number of bytes pinned by the registration cache.
+     */
+    private long registrationCacheSize = 1L << 30;
+
+    /**
+     * The granularity the registration cache registers memory with.
+     */
+    private long registrationGranularity = 1L << 20;
 }
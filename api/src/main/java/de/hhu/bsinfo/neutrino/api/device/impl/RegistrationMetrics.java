@@ -0,0 +1,63 @@
+package de.hhu.bsinfo.neutrino.api.device.impl;
+
+import de.hhu.bsinfo.neutrino.api.util.RegistrationCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.TimeUnit;
+
+@Accessors(fluent = true)
+public @Data final class RegistrationMetrics {
+
+    private final FunctionCounter hits;
+
+    private final FunctionCounter misses;
+
+    private final FunctionCounter evictions;
+
+    private final Gauge hitRate;
+
+    private final Gauge pinnedBytes;
+
+    private final FunctionTimer registrationTime;
+
+    public RegistrationMetrics(MeterRegistry meterRegistry, RegistrationCache cache) {
+        hits = FunctionCounter.builder("device.registration.cache.lookups", cache, RegistrationCache::getHits)
+                .description("The number of lookups served by the registration cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+
+        misses = FunctionCounter.builder("device.registration.cache.lookups", cache, RegistrationCache::getMisses)
+                .description("The number of lookups which required registering memory")
+                .tag("result", "miss")
+                .register(meterRegistry);
+
+        evictions = FunctionCounter.builder("device.registration.cache.evictions", cache, RegistrationCache::getEvictions)
+                .description("The number of memory regions evicted from the registration cache")
+                .register(meterRegistry);
+
+        hitRate = Gauge.builder("device.registration.cache.hit.rate", cache, RegistrationMetrics::hitRate)
+                .description("The fraction of lookups served by the registration cache")
+                .register(meterRegistry);
+
+        pinnedBytes = Gauge.builder("device.registration.cache.pinned", cache, RegistrationCache::getPinnedBytes)
+                .description("The number of bytes pinned by the registration cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        registrationTime = FunctionTimer.builder("device.registration.time", cache,
+                RegistrationCache::getRegistrations, RegistrationCache::getRegistrationTime, TimeUnit.NANOSECONDS)
+                .description("The time it takes to register memory")
+                .register(meterRegistry);
+    }
+
+    private static double hitRate(RegistrationCache cache) {
+        var hits = cache.getHits();
+        var lookups = hits + cache.getMisses();
+        return lookups == 0 ? 0.0 : hits / (double) lookups;
+    }
+}
@@ -0,0 +1,15 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+public enum CompletionMode {
+
+    /**
+     * Agents wait for completion events using epoll.
+     */
+    EPOLL,
+
+    /**
+     * Agents spin on their completion queues and fall back
+     * to epoll after the configured busy poll timeout.
+     */
+    BUSY_POLL
+}
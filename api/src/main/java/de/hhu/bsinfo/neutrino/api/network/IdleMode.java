@@ -0,0 +1,30 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+/**
+ * Determines what a worker does after a work cycle in which its agents found no work. Agents waiting
+ * for events using epoll block within epoll, so that the idle mode only affects busy polling agents.
+ * Combining {@link CompletionMode#BUSY_POLL} with a busy poll timeout lets agents spin while traffic
+ * is flowing and block within epoll once it stops.
+ */
+public enum IdleMode {
+
+    /**
+     * Workers spin, which yields the lowest latency but occupies a full core.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Workers yield their core to other threads.
+     */
+    YIELD,
+
+    /**
+     * Workers spin, then yield and finally park for increasing periods of time.
+     */
+    BACKOFF,
+
+    /**
+     * Workers park for a short period of time.
+     */
+    PARK
+}
@@ -18,10 +18,50 @@ public @Data class InfinibandChannel {
      */
     private final NetworkService network;
 
+    public final void setCoalescing(boolean enabled) {
+        network.setCoalescing(this, enabled);
+    }
+
+    public final void setReceivePaused(boolean paused) {
+        network.setReceivePaused(this, paused);
+    }
+
     public final void send(int id, DirectBuffer buffer, int offset, int length) {
         network.send(this, id, buffer, offset, length);
     }
 
+    public final void send(int id, RegisteredBuffer buffer, int offset, int length) {
+        network.send(this, id, buffer, offset, length);
+    }
+
+    public final RequestStatus trySend(int id, DirectBuffer buffer, int offset, int length) {
+        return network.trySend(this, id, buffer, offset, length);
+    }
+
+    public final RequestStatus trySend(int id, RegisteredBuffer buffer, int offset, int length) {
+        return network.trySend(this, id, buffer, offset, length);
+    }
+
+    public final RequestStatus tryRead(int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
+        return network.tryRead(this, id, handle, buffer, offset, length);
+    }
+
+    public final RequestStatus tryWrite(int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle) {
+        return network.tryWrite(this, id, buffer, offset, length, handle);
+    }
+
+    public final void requestWritable() {
+        network.requestWritable(this);
+    }
+
+    public final RegisteredBuffer claim() {
+        return network.claim(this);
+    }
+
+    public final void commit(int id, RegisteredBuffer buffer, int length) {
+        network.commit(this, id, buffer, length);
+    }
+
     public final void read(int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
         network.read(this, id, handle, buffer, offset, length);
     }
@@ -29,4 +69,28 @@ public @Data class InfinibandChannel {
     public final void write(int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle) {
         network.write(this, id, buffer, offset, length, handle);
     }
+
+    public final void send(int id, ScatterGatherList source) {
+        network.send(this, id, source);
+    }
+
+    public final void read(int id, RemoteHandle handle, ScatterGatherList target) {
+        network.read(this, id, handle, target);
+    }
+
+    public final void write(int id, ScatterGatherList source, RemoteHandle handle) {
+        network.write(this, id, source, handle);
+    }
+
+    public final void writeWithImmediate(int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle, int immediateData) {
+        network.writeWithImmediate(this, id, buffer, offset, length, handle, immediateData);
+    }
+
+    public final void fetchAdd(int id, RemoteHandle handle, long value, RegisteredBuffer result, int offset) {
+        network.fetchAdd(this, id, handle, value, result, offset);
+    }
+
+    public final void compareSwap(int id, RemoteHandle handle, long expected, long value, RegisteredBuffer result, int offset) {
+        network.compareSwap(this, id, handle, expected, value, result, offset);
+    }
 }
@@ -12,13 +12,73 @@ public interface NetworkConfiguration {
      */
     int getSharedReceiveQueueSize();
 
+    /**
+     * The size of each buffer posted to the shared receive queue, which limits the size of a
+     * single unfragmented message. Smaller buffers reduce registered memory for small messages.
+     */
+    int getReceiveBufferSize();
+
+    /**
+     * Whether receive buffers are only reused after handlers released them. If enabled,
+     * handlers receive a reference-counted {@link ReceiveBuffer} they may retain.
+     */
+    boolean isDeferredReceiveRelease();
+
+    /**
+     * The maximum size of a single message. Messages larger than a receive buffer are split
+     * into fragments, which are posted at once and reassembled by the remote. If flow control is enabled,
+     * all fragments of a message must fit into the initial credits.
+     */
+    int getMaxMessageSize();
+
+    /**
+     * Messages up to this size are packed together on channels with coalescing enabled.
+     */
+    int getCoalescingThreshold();
+
+    /**
+     * The maximum number of bytes coalesced into a single work request.
+     */
+    int getCoalescingLimit();
+
+    /**
+     * The number of microseconds coalesced messages may be held back waiting for further messages.
+     */
+    int getCoalescingTimeout();
+
+    /**
+     * Messages sent from registered buffers above this size are announced to the remote,
+     * which reads them directly into a buffer supplied by its {@link NetworkHandler}.
+     */
+    int getRendezvousThreshold();
+
+    /**
+     * The maximum number of messages read concurrently using the rendezvous protocol per connection.
+     */
+    int getMaxRendezvousTransfers();
+
+    /**
+     * The number of receive buffers per receive agent, which may be retained by handlers
+     * without reducing the number of buffers posted to the shared receive queue.
+     */
+    int getRetainedReceiveBuffers();
+
+    /**
+     * The number of messages each side of a connection may send before the remote grants further credits.
+     * Senders hold back messages instead of relying on receiver-not-ready retries. The shared receive queue
+     * should hold at least as many buffers as credits granted to all connections of a receive agent. Zero
+     * disables flow control.
+     */
+    int getFlowControlCredits();
+
     /**
      * The maximum number of scatter-gather elements per work request.
      */
     int getMaxScatterGatherElements();
 
     /**
-     * The maximum number of completion events within a completion queue.
+     * The maximum number of completion events within a completion queue. Each agent uses a single
+     * completion queue for all of its connections, which limits the number of outstanding requests per agent.
      */
     int getCompletionQueueSize();
 
@@ -79,6 +139,13 @@ public interface NetworkConfiguration {
      */
     byte getServiceLevel();
 
+    /**
+     * The service level used by the high-priority lane of prioritized channels. The fabric only prefers its
+     * traffic if the subnet manager maps this service level to a virtual lane with a higher priority. The remote
+     * side of a high-priority lane adopts the service level requested by the side which opened the lane.
+     */
+    byte getPriorityServiceLevel();
+
     /**
      * The minmal delay a queue pair waits for an ACK/NACK before
      * resending the message.
@@ -136,8 +203,74 @@ public interface NetworkConfiguration {
      */
     int getReceiveWorker();
 
+    /**
+     * Whether event loops are pinned to the CPUs of the device's NUMA node and agent buffers are bound
+     * to its memory. Explicit CPU lists take precedence over the node's CPUs.
+     */
+    boolean isNumaPlacement();
+
+    /**
+     * Whether agent buffer pools and receive rings are backed by huge pages. Reserved huge pages are
+     * used if available, falling back to transparent huge pages.
+     */
+    boolean isHugePages();
+
+    /**
+     * The CPUs send workers are pinned to (e.g. "2-5,8"), one CPU per worker in turn. Empty to not pin single CPUs.
+     */
+    String getSendCpus();
+
+    /**
+     * The CPUs receive workers are pinned to (e.g. "2-5,8"), one CPU per worker in turn. Empty to not pin single CPUs.
+     */
+    String getReceiveCpus();
+
     /**
      * The epoll timeout.
      */
     int getEpollTimeout();
+
+    /**
+     * The number of send buffers each application thread caches locally.
+     * Sharding is disabled if this value is zero.
+     */
+    int getBufferShardSize();
+
+    /**
+     * Messages up to this size in bytes are sent as inline data.
+     * Inline sends are disabled if this value is zero.
+     */
+    int getInlineThreshold();
+
+    /**
+     * Every n-th work request is posted signaled. The last work request
+     * within a batch is always signaled. A value of 1 signals every work request.
+     */
+    int getSignalInterval();
+
+    /**
+     * The completion mode used by send agents.
+     */
+    CompletionMode getSendCompletionMode();
+
+    /**
+     * The completion mode used by receive agents.
+     */
+    CompletionMode getReceiveCompletionMode();
+
+    /**
+     * The number of microseconds a busy polling agent spins without finding
+     * work before falling back to epoll. Agents never fall back if this value is negative.
+     */
+    int getBusyPollTimeout();
+
+    /**
+     * What send workers do after a work cycle without any work.
+     */
+    IdleMode getSendIdleMode();
+
+    /**
+     * What receive workers do after a work cycle without any work.
+     */
+    IdleMode getReceiveIdleMode();
 }
@@ -1,6 +1,8 @@
 package de.hhu.bsinfo.neutrino.api.network;
 
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
 import org.agrona.DirectBuffer;
+import org.jetbrains.annotations.Nullable;
 
 public interface NetworkHandler {
 
@@ -10,4 +12,48 @@ public interface NetworkHandler {
 
     void onMessage(InfinibandChannel channel, DirectBuffer buffer, int offset, int length);
 
+    /**
+     * Called for every received message if deferred receive buffer release is enabled. The message stays
+     * valid after this method returns if the handler {@link ReceiveBuffer#retain() retains} it and is
+     * reused once the handler {@link ReceiveBuffer#release() releases} it again. Reassembled and coalesced messages are
+     * always passed to {@link #onMessage(InfinibandChannel, DirectBuffer, int, int)} instead.
+     */
+    default void onMessage(InfinibandChannel channel, ReceiveBuffer message) {
+        onMessage(channel, message.buffer(), 0, message.length());
+    }
+
+    /**
+     * Called on the receive agent's thread if the remote announces a message using the rendezvous protocol.
+     * The message is read into the returned buffer, which is passed to {@link #onMessage} on the receive agent's
+     * thread afterwards and owned by the handler from then on. Returning null rejects the message, which fails
+     * the remote's send request.
+     */
+    default @Nullable RegisteredBuffer allocate(InfinibandChannel channel, int length) {
+        return null;
+    }
+
+    /**
+     * Called if a message announced using the rendezvous protocol could not be read into a buffer
+     * returned by {@link #allocate(InfinibandChannel, int)}. The handler owns the buffer again and
+     * the default implementation releases it. Called on the thread of either the send or the receive agent.
+     */
+    default void onAllocationFailed(InfinibandChannel channel, RegisteredBuffer buffer) throws Exception {
+        buffer.release();
+    }
+
+    /**
+     * Called once the remote has written length bytes into a local buffer using a write with immediate data.
+     */
+    default void onWriteNotification(InfinibandChannel channel, int immediateData, int length) {
+
+    }
+
+    /**
+     * Called on the send agent's thread once the channel accepts requests again after
+     * {@link NetworkService#requestWritable(InfinibandChannel)} was called.
+     */
+    default void onWritable(InfinibandChannel channel) {
+
+    }
+
 }
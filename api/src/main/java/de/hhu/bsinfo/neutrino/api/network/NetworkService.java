@@ -6,6 +6,8 @@ import de.hhu.bsinfo.neutrino.verbs.Mtu;
 import org.agrona.DirectBuffer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.function.IntFunction;
 
 public interface NetworkService {
 
@@ -13,9 +15,135 @@ public interface NetworkService {
 
     InfinibandChannel connect(Negotiator negotiator, NetworkHandler handler, Mtu mtu) throws IOException;
 
+    /**
+     * Establishes a channel striped across the specified number of lanes, each being a separate connection. Like all
+     * connections, lanes are assigned to the least loaded agents, so that a single peer link is not limited to one
+     * send agent's posting rate. The handler may be called from several agents concurrently. The negotiators are created once per lane.
+     */
+    default StripedChannel connect(IntFunction<Negotiator> negotiators, NetworkHandler handler, Mtu mtu, int lanes) throws IOException {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("At least one lane is required");
+        }
+
+        var channels = new ArrayList<InfinibandChannel>(lanes);
+        try {
+            for (int lane = 0; lane < lanes; lane++) {
+                channels.add(connect(negotiators.apply(lane), handler, mtu));
+            }
+        } catch (IOException | RuntimeException e) {
+
+            // Do not leak lanes which were already established
+            channels.forEach(this::disconnect);
+            throw e;
+        }
+
+        return new StripedChannel(channels);
+    }
+
+    /**
+     * Establishes a channel consisting of a high- and a low-priority lane, which use different service levels and
+     * are driven by the same send agent. The negotiators are created with 0 for the high- and 1 for the low-priority lane.
+     */
+    PriorityChannel connectPrioritized(IntFunction<Negotiator> negotiators, NetworkHandler handler, Mtu mtu) throws IOException;
+
+    void disconnect(InfinibandChannel channel);
+
+    /**
+     * Enables or disables send coalescing for the channel. While enabled, small messages are packed
+     * together into a single work request by the send agent and unpacked again by the remote.
+     */
+    void setCoalescing(InfinibandChannel channel, boolean enabled);
+
+    /**
+     * Withholds credits from the remote while paused, so that it stops sending once it used up the credits
+     * granted so far. Messages already in flight are still received. Has no effect if flow control is disabled.
+     */
+    void setReceivePaused(InfinibandChannel channel, boolean paused);
+
     void send(InfinibandChannel channel, int id, DirectBuffer buffer, int offset, int length);
 
+    /**
+     * Sends the data directly from the registered buffer without copying it. The buffer must not
+     * be modified until {@link NetworkHandler#onRequestCompleted} or {@link NetworkHandler#onRequestFailed}
+     * is called with the specified id.
+     */
+    void send(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length);
+
+    /**
+     * Like {@link #send(InfinibandChannel, int, DirectBuffer, int, int)}, but never waits for space within
+     * the channel's request buffer or for a pooled buffer. Instead, the returned status tells the caller
+     * why the message was not queued, so that it can shed or defer it using {@link #requestWritable}.
+     */
+    RequestStatus trySend(InfinibandChannel channel, int id, DirectBuffer buffer, int offset, int length);
+
+    /**
+     * Like {@link #send(InfinibandChannel, int, RegisteredBuffer, int, int)}, but never waits for space within the channel's request buffer.
+     */
+    RequestStatus trySend(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length);
+
+    /**
+     * Like {@link #read(InfinibandChannel, int, RemoteHandle, RegisteredBuffer, int, int)}, but never waits for space within the channel's request buffer.
+     */
+    RequestStatus tryRead(InfinibandChannel channel, int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length);
+
+    /**
+     * Like {@link #write(InfinibandChannel, int, RegisteredBuffer, int, int, RemoteHandle)}, but never waits for space within the channel's request buffer.
+     */
+    RequestStatus tryWrite(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle);
+
+    /**
+     * Asks the channel's send agent to call {@link NetworkHandler#onWritable} once, as soon as the channel's
+     * request buffer is at most half full and pooled buffers are available again.
+     */
+    void requestWritable(InfinibandChannel channel);
+
+    /**
+     * Claims a buffer the caller can write a message into. The buffer must either be sent
+     * using {@link #commit} on the same channel or returned using {@link RegisteredBuffer#release()}.
+     */
+    RegisteredBuffer claim(InfinibandChannel channel);
+
+    /**
+     * Sends the first length bytes of a buffer previously claimed on this channel. The buffer
+     * is returned to its pool once the request completes and must not be used afterwards.
+     */
+    void commit(InfinibandChannel channel, int id, RegisteredBuffer buffer, int length);
+
     void read(InfinibandChannel channel, int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length);
 
     void write(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle);
+
+    /**
+     * Writes the data into the remote buffer and notifies the remote's {@link NetworkHandler#onWriteNotification}
+     * using the immediate data once the data has been placed. The notification consumes a receive buffer on the remote side.
+     */
+    void writeWithImmediate(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle, int immediateData);
+
+    /**
+     * Atomically adds the value to the 8-byte remote value and stores the value it had
+     * before into the result buffer at the specified offset.
+     */
+    void fetchAdd(InfinibandChannel channel, int id, RemoteHandle handle, long value, RegisteredBuffer result, int offset);
+
+    /**
+     * Atomically replaces the 8-byte remote value if it equals the expected value and stores
+     * the value it had before into the result buffer at the specified offset.
+     */
+    void compareSwap(InfinibandChannel channel, int id, RemoteHandle handle, long expected, long value, RegisteredBuffer result, int offset);
+
+    /**
+     * Sends all segments as a single message using one work request. Like sends from a
+     * registered buffer, the segments must not be modified until the request completes.
+     */
+    void send(InfinibandChannel channel, int id, ScatterGatherList source);
+
+    /**
+     * Reads the remote buffer into all segments in order using one work request.
+     */
+    void read(InfinibandChannel channel, int id, RemoteHandle handle, ScatterGatherList target);
+
+    /**
+     * Writes all segments in order into the remote buffer using one work request.
+     */
+    void write(InfinibandChannel channel, int id, ScatterGatherList source, RemoteHandle handle);
 }
@@ -0,0 +1,29 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+import lombok.Data;
+
+/**
+ * A channel consisting of a high- and a low-priority lane to the same peer. Each lane is a separate connection with
+ * its own queue pair and request buffer. Both lanes are driven by the same send agent, which always posts requests
+ * queued on the high-priority lane first, so that small control traffic does not wait behind bulk transfers.
+ */
+public @Data class PriorityChannel {
+
+    /**
+     * The lane using the configured priority service level.
+     */
+    private final InfinibandChannel high;
+
+    /**
+     * The lane using the default service level.
+     */
+    private final InfinibandChannel low;
+
+    /**
+     * Disconnects both lanes.
+     */
+    public void disconnect() {
+        high.getNetwork().disconnect(high);
+        low.getNetwork().disconnect(low);
+    }
+}
@@ -0,0 +1,94 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+import org.agrona.DirectBuffer;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A reference-counted view of a received message. The underlying receive buffer
+ * is handed back to the network once all references have been released.
+ */
+public final class ReceiveBuffer {
+
+    /**
+     * The receive buffer's index within its receive ring.
+     */
+    private final int index;
+
+    /**
+     * The memory the message was received into.
+     */
+    private final DirectBuffer buffer;
+
+    /**
+     * Function for returning this buffer to its receive ring.
+     */
+    private final Consumer<ReceiveBuffer> releaser;
+
+    /**
+     * The received message's length.
+     */
+    private int length;
+
+    /**
+     * The number of references held on this buffer.
+     */
+    private volatile int references;
+    private static final AtomicIntegerFieldUpdater<ReceiveBuffer> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(ReceiveBuffer.class, "references");
+
+    public ReceiveBuffer(int index, DirectBuffer buffer, Consumer<ReceiveBuffer> releaser) {
+        this.index = index;
+        this.buffer = buffer;
+        this.releaser = releaser;
+    }
+
+    /**
+     * Prepares this buffer for a newly received message, holding a single reference.
+     */
+    public ReceiveBuffer reset(int length) {
+        this.length = length;
+        REFERENCES.lazySet(this, 1);
+        return this;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public DirectBuffer buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Acquires an additional reference, which keeps the message valid until it is released.
+     */
+    public ReceiveBuffer retain() {
+        int current;
+        do {
+            current = references;
+            if (current <= 0) {
+                throw new IllegalStateException("Receive buffer was already released");
+            }
+        } while (!REFERENCES.compareAndSet(this, current, current + 1));
+
+        return this;
+    }
+
+    /**
+     * Releases a reference. The message must not be accessed after the last reference has been released.
+     */
+    public void release() {
+        var remaining = REFERENCES.decrementAndGet(this);
+        if (remaining == 0) {
+            releaser.accept(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Receive buffer was already released");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+public enum RequestStatus {
+
+    /**
+     * The request was queued and will be completed or failed using the channel's {@link NetworkHandler}.
+     */
+    SUCCESS,
+
+    /**
+     * The channel's request buffer is full, since the send agent does not keep up.
+     */
+    RING_FULL,
+
+    /**
+     * No pooled buffer is available for copying the message into.
+     */
+    NO_BUFFER
+}
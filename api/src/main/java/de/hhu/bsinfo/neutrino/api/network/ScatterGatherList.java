@@ -0,0 +1,85 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A reusable list of registered buffer segments, which are transferred using a single work request.
+ */
+@NotThreadSafe
+public final class ScatterGatherList {
+
+    private final RegisteredBuffer[] buffers;
+
+    private final int[] offsets;
+
+    private final int[] lengths;
+
+    private int size;
+
+    public ScatterGatherList(int capacity) {
+        buffers = new RegisteredBuffer[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+    }
+
+    /**
+     * Appends a segment to this list.
+     */
+    public ScatterGatherList add(RegisteredBuffer buffer, int offset, int length) {
+        if (size == buffers.length) {
+            throw new IllegalStateException("Scatter-gather list is full");
+        }
+
+        buffers[size] = buffer;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+
+        return this;
+    }
+
+    /**
+     * Removes all segments from this list.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            buffers[i] = null;
+        }
+
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return buffers.length;
+    }
+
+    public RegisteredBuffer buffer(int index) {
+        return buffers[index];
+    }
+
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * The total number of bytes described by this list.
+     */
+    public long totalLength() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += lengths[i];
+        }
+
+        return total;
+    }
+}
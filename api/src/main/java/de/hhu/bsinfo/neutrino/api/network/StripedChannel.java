@@ -0,0 +1,85 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+import org.agrona.DirectBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stripes requests to a single peer across several lanes. Each lane is a separate channel with its own queue pair
+ * and request buffer, so that lanes can be driven by different send agents in parallel. Requests using the same
+ * stream key are always posted on the same lane and therefore keep their order, while requests without a stream key
+ * are distributed round-robin and may complete and arrive in any order.
+ */
+@ThreadSafe
+public final class StripedChannel {
+
+    /**
+     * The channels requests are striped across.
+     */
+    private final InfinibandChannel[] lanes;
+
+    /**
+     * The number of requests distributed round-robin so far.
+     */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public StripedChannel(List<InfinibandChannel> lanes) {
+        if (lanes.isEmpty()) {
+            throw new IllegalArgumentException("At least one lane is required");
+        }
+
+        this.lanes = lanes.toArray(new InfinibandChannel[0]);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the lane all requests using the specified stream key are posted on.
+     */
+    public InfinibandChannel lane(int streamKey) {
+        return lanes[Math.floorMod(streamKey, lanes.length)];
+    }
+
+    /**
+     * Returns the lane the next unordered request should be posted on.
+     */
+    public InfinibandChannel next() {
+        return lanes[Math.floorMod(sequence.getAndIncrement(), lanes.length)];
+    }
+
+    public void send(int id, DirectBuffer buffer, int offset, int length) {
+        next().send(id, buffer, offset, length);
+    }
+
+    public void send(int streamKey, int id, DirectBuffer buffer, int offset, int length) {
+        lane(streamKey).send(id, buffer, offset, length);
+    }
+
+    public void send(int streamKey, int id, RegisteredBuffer buffer, int offset, int length) {
+        lane(streamKey).send(id, buffer, offset, length);
+    }
+
+    public RequestStatus trySend(int streamKey, int id, DirectBuffer buffer, int offset, int length) {
+        return lane(streamKey).trySend(id, buffer, offset, length);
+    }
+
+    public void setCoalescing(boolean enabled) {
+        for (var lane : lanes) {
+            lane.setCoalescing(enabled);
+        }
+    }
+
+    /**
+     * Disconnects all lanes.
+     */
+    public void disconnect() {
+        for (var lane : lanes) {
+            lane.getNetwork().disconnect(lane);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.hhu.bsinfo.neutrino.api.network.flow;
+
+import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
+import de.hhu.bsinfo.neutrino.api.network.NetworkHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts a single channel to {@link Flow}. Inbound messages are published to a {@link MessagePublisher}, whose
+ * subscriber's demand decides whether credits are granted to the remote. Outbound messages are sent by a
+ * {@link MessageSubscriber}, which only requests further messages once the channel accepted previous ones.
+ * End-to-end backpressure on the receiving side requires flow control to be enabled.
+ */
+@Slf4j
+public final class FlowHandler implements NetworkHandler {
+
+    /**
+     * The number of messages requested from upstream at once by default.
+     */
+    public static final int DEFAULT_WINDOW = 64;
+
+    /**
+     * Publishes messages received on the channel.
+     */
+    private final MessagePublisher publisher = new MessagePublisher();
+
+    /**
+     * The number of messages requested from upstream at once.
+     */
+    private final int window;
+
+    /**
+     * Sends messages published upstream on the channel.
+     */
+    private volatile MessageSubscriber subscriber;
+
+    public FlowHandler() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public FlowHandler(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+
+        this.window = window;
+    }
+
+    /**
+     * The publisher of all messages received on the channel.
+     */
+    public Flow.Publisher<DirectBuffer> publisher() {
+        return publisher;
+    }
+
+    /**
+     * Creates the subscriber sending messages on the channel, which was established using this handler.
+     */
+    public synchronized Flow.Subscriber<DirectBuffer> subscriber(InfinibandChannel channel) {
+        if (subscriber != null) {
+            throw new IllegalStateException("Subscriber already created");
+        }
+
+        subscriber = new MessageSubscriber(channel, window);
+        return subscriber;
+    }
+
+    @Override
+    public void onRequestCompleted(InfinibandChannel channel, int id) {
+
+    }
+
+    @Override
+    public void onRequestFailed(InfinibandChannel channel, int id) {
+        log.error("Sending message #{} on channel #{} failed", id, channel.getId());
+
+        // Stop sending, since the connection is broken
+        var current = subscriber;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void onMessage(InfinibandChannel channel, DirectBuffer buffer, int offset, int length) {
+        publisher.onMessage(channel, buffer, offset, length);
+    }
+
+    @Override
+    public void onWritable(InfinibandChannel channel) {
+        var current = subscriber;
+        if (current != null) {
+            current.onWritable();
+        }
+    }
+}
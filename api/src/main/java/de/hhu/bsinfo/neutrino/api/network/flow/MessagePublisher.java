@@ -0,0 +1,204 @@
+package de.hhu.bsinfo.neutrino.api.network.flow;
+
+import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes messages received on a single channel to one subscriber. Each message is emitted as a heap copy,
+ * which the subscriber owns and may keep after {@link Flow.Subscriber#onNext} returns, since receive buffers are
+ * reused as soon as the handler returns. Messages are passed to the subscriber directly on the receive agent's
+ * thread as long as it signals enough demand. Otherwise, they are queued, while the channel's receive side is
+ * paused, so that the remote stops sending once it used up its credits.
+ */
+@ThreadSafe
+public final class MessagePublisher implements Flow.Publisher<DirectBuffer> {
+
+    /**
+     * Handed to subscribers which can not be served.
+     */
+    private static final Flow.Subscription REJECTED = new Flow.Subscription() {
+
+        @Override
+        public void request(long count) {}
+
+        @Override
+        public void cancel() {}
+    };
+
+    /**
+     * Messages the subscriber did not request yet.
+     */
+    private final Queue<DirectBuffer> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Serializes signals to the subscriber. Every thread which increments this counter
+     * from zero drains the queue until no other thread requested a drain in the meantime.
+     */
+    private final AtomicInteger workInProgress = new AtomicInteger();
+
+    /**
+     * The number of messages requested by the subscriber, which were not delivered yet.
+     */
+    private final AtomicLong requested = new AtomicLong();
+
+    /**
+     * The current subscriber.
+     */
+    private final AtomicReference<Flow.Subscriber<? super DirectBuffer>> subscriber = new AtomicReference<>();
+
+    /**
+     * The channel messages are received on. Known once the first message arrived.
+     */
+    private volatile InfinibandChannel channel;
+
+    /**
+     * Whether the subscriber cancelled its subscription.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Whether the channel's receive side is paused. Only accessed while draining.
+     */
+    private boolean paused;
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DirectBuffer> subscriber) {
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(REJECTED);
+            subscriber.onError(new IllegalStateException("Publisher supports only a single subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Subscription());
+    }
+
+    /**
+     * Called for each message received on the channel.
+     */
+    void onMessage(InfinibandChannel channel, DirectBuffer buffer, int offset, int length) {
+        this.channel = channel;
+
+        // Pass the message to the subscriber without queueing it if no other thread is draining and nothing is queued
+        if (workInProgress.get() == 0 && workInProgress.compareAndSet(0, 1)) {
+            var target = subscriber.get();
+            if (target != null && queue.isEmpty() && requested.get() > 0 && !cancelled) {
+                target.onNext(copy(buffer, offset, length));
+                produced(1);
+
+                if (workInProgress.decrementAndGet() == 0) {
+                    return;
+                }
+            } else {
+                queue.offer(copy(buffer, offset, length));
+            }
+        } else {
+            queue.offer(copy(buffer, offset, length));
+            if (workInProgress.getAndIncrement() != 0) {
+                return;
+            }
+        }
+
+        drainLoop();
+    }
+
+    private void drain() {
+        if (workInProgress.getAndIncrement() == 0) {
+            drainLoop();
+        }
+    }
+
+    private void drainLoop() {
+        var missed = 1;
+        do {
+
+            // Deliver queued messages as long as the subscriber requests them
+            var target = subscriber.get();
+            if (cancelled) {
+                queue.clear();
+            } else if (target != null) {
+                var demand = requested.get();
+                var delivered = 0L;
+                while (delivered != demand && !cancelled) {
+                    var message = queue.poll();
+                    if (message == null) {
+                        break;
+                    }
+
+                    target.onNext(message);
+                    delivered++;
+                }
+
+                if (delivered != 0) {
+                    produced(delivered);
+                }
+            }
+
+            // Withhold credits from the remote as long as queued messages wait for demand
+            var backlog = !queue.isEmpty();
+            var current = channel;
+            if (backlog != paused && current != null) {
+                paused = backlog;
+                current.setReceivePaused(backlog);
+            }
+
+            missed = workInProgress.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void produced(long count) {
+        if (requested.get() != Long.MAX_VALUE) {
+            requested.addAndGet(-count);
+        }
+    }
+
+    private static DirectBuffer copy(DirectBuffer buffer, int offset, int length) {
+        var copy = new UnsafeBuffer(new byte[length]);
+        copy.putBytes(0, buffer, offset, length);
+        return copy;
+    }
+
+    private final class Subscription implements Flow.Subscription {
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                cancel();
+                var target = subscriber.get();
+                if (target != null) {
+                    target.onError(new IllegalArgumentException("Demand must be positive"));
+                }
+
+                return;
+            }
+
+            // Add the demand without overflowing
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    return;
+                }
+
+                next = current + count < 0 ? Long.MAX_VALUE : current + count;
+            } while (!requested.compareAndSet(current, next));
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+    }
+}
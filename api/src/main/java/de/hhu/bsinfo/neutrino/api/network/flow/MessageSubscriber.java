@@ -0,0 +1,152 @@
+package de.hhu.bsinfo.neutrino.api.network.flow;
+
+import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
+import de.hhu.bsinfo.neutrino.api.network.RequestStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+
+/**
+ * Sends every message published upstream on a single channel. Upstream demand is only signaled for messages the
+ * channel accepted, so that at most window messages are outstanding. Messages the channel could not accept are
+ * copied and sent once the send agent reports that the channel is writable again. Messages the channel rejects,
+ * e.g. because they exceed the maximum message size, cancel the subscription instead of throwing from
+ * {@link #onNext(DirectBuffer)}, which Reactive Streams forbids.
+ */
+@Slf4j
+@ThreadSafe
+public final class MessageSubscriber implements Flow.Subscriber<DirectBuffer> {
+
+    /**
+     * The channel messages are sent on.
+     */
+    private final InfinibandChannel channel;
+
+    /**
+     * The number of messages requested from upstream at once.
+     */
+    private final int window;
+
+    /**
+     * Copies of messages waiting for the channel to become writable again.
+     */
+    private final ArrayDeque<DirectBuffer> pending = new ArrayDeque<>();
+
+    /**
+     * The upstream subscription.
+     */
+    private Flow.Subscription subscription;
+
+    /**
+     * The identifier used for the next send request.
+     */
+    private int sequence;
+
+    /**
+     * Whether the subscription was cancelled, after which messages still in flight are dropped.
+     */
+    private boolean cancelled;
+
+    MessageSubscriber(InfinibandChannel channel, int window) {
+        this.channel = channel;
+        this.window = window;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        subscription.request(window);
+    }
+
+    @Override
+    public synchronized void onNext(DirectBuffer message) {
+        if (cancelled) {
+            return;
+        }
+
+        // Keep the order of messages by queueing behind messages waiting for the channel
+        if (pending.isEmpty() && trySend(message)) {
+            sequence++;
+            subscription.request(1);
+            return;
+        }
+
+        if (cancelled) {
+            return;
+        }
+
+        // Copy the message, since upstream may reuse it after this method returns
+        var copy = new UnsafeBuffer(new byte[message.capacity()]);
+        copy.putBytes(0, message, 0, message.capacity());
+        if (pending.isEmpty()) {
+            channel.requestWritable();
+        }
+
+        pending.add(copy);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.error("Upstream of channel #{} failed", channel.getId(), throwable);
+    }
+
+    @Override
+    public void onComplete() {}
+
+    /**
+     * Sends messages waiting for the channel and requests as many messages from upstream as were sent.
+     */
+    synchronized void onWritable() {
+        var sent = 0;
+        while (!pending.isEmpty()) {
+            if (!trySend(pending.peek())) {
+                if (!cancelled) {
+                    channel.requestWritable();
+                }
+
+                break;
+            }
+
+            pending.poll();
+            sequence++;
+            sent++;
+        }
+
+        if (sent != 0 && !cancelled) {
+            subscription.request(sent);
+        }
+    }
+
+    /**
+     * Tries to send the message on the channel. Cancels the subscription if the channel rejects it.
+     */
+    private boolean trySend(DirectBuffer message) {
+        try {
+            return channel.trySend(sequence, message, 0, message.capacity()) == RequestStatus.SUCCESS;
+        } catch (RuntimeException e) {
+            log.error("Channel #{} rejected message #{} of {} bytes", channel.getId(), sequence, message.capacity(), e);
+            cancel();
+            return false;
+        }
+    }
+
+    /**
+     * Stops receiving messages from upstream, since the channel can no longer be used.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        pending.clear();
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+}
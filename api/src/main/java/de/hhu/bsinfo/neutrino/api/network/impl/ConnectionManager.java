@@ -4,36 +4,38 @@ import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDeviceConfig;
 import de.hhu.bsinfo.neutrino.api.network.*;
 import de.hhu.bsinfo.neutrino.api.network.impl.agent.AgentResources;
-import de.hhu.bsinfo.neutrino.api.network.impl.util.QueuePairResources;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.Coalescer;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ConnectionTable;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ControlMessage;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.FlowControl;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.QueuePairState;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.RendezvousTable;
 import de.hhu.bsinfo.neutrino.api.util.QueuePairAddress;
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
 import de.hhu.bsinfo.neutrino.util.EventFileDescriptor;
 import de.hhu.bsinfo.neutrino.verbs.*;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class ConnectionManager {
 
-    private static final int MAX_CONNECTIONS = 1024;
-
     private final InfinibandDevice device;
 
     private final InfinibandDeviceConfig deviceConfig;
 
     private final NetworkConfiguration networkConfig;
 
-    private final AtomicInteger connectionCounter = new AtomicInteger();
-
     private final SharedResources sharedResources;
 
-    // TODO(krakowski):
-    //  let connections array grow dynamically
-    private final InternalConnection[] connections = new InternalConnection[MAX_CONNECTIONS];
+    /**
+     * All established connections indexed by their handle.
+     */
+    private final ConnectionTable<InternalConnection> connections = new ConnectionTable<>();
 
     public ConnectionManager(SharedResources sharedResources) {
         device = sharedResources.device();
@@ -42,33 +44,69 @@ public class ConnectionManager {
         this.sharedResources = sharedResources;
     }
 
-    public InternalConnection connect(Negotiator negotiator, Mtu mtu, NetworkHandler networkHandler, SharedReceiveQueue receiveQueue, AgentResources agentResources, NetworkService networkService) throws IOException {
+    public InternalConnection connect(Negotiator negotiator, Mtu mtu, NetworkHandler networkHandler, SharedReceiveQueue receiveQueue, AgentResources sendResources, AgentResources receiveResources, NetworkService networkService, boolean priority) throws IOException {
 
-        var sendProtectionDomain = agentResources.protectionDomain();
+        var sendProtectionDomain = sendResources.protectionDomain();
 
-        // Create resources for new queue pair
-        var queuePairResources = QueuePairResources.create(device, networkConfig);
-
-        // Create initial attributes
-        var initialAttributes = createInitialAttributes(queuePairResources, receiveQueue);
+        // Create initial attributes using the completion queues shared by each agent's connections
+        var initialAttributes = createInitialAttributes(
+                sendResources.completionResources().getCompletionQueue(),
+                receiveResources.completionResources().getCompletionQueue(),
+                receiveQueue
+        );
 
         // Create queue pair
         var queuePair = createQueuePair(initialAttributes, sendProtectionDomain);
 
-        // Create new connection
-        var connection = createConnection(queuePair, queuePairResources, networkHandler, networkService);
+        // Reserve a handle for the new connection
+        var id = connections.allocate();
+        RegisteredBuffer creditBuffer = null;
+        InternalConnection connection = null;
+
+        try {
+
+            // Allocate the buffer the remote grants credits into if flow control is enabled
+            if (networkConfig.getFlowControlCredits() > 0) {
+                creditBuffer = device.allocateMemory(FlowControl.SIZE);
+            }
+
+            // Create new connection
+            connection = createConnection(id, queuePair, creditBuffer, networkHandler, networkService, priority);
+
+            // Exchange queue pair information with remote peer
+            var serviceLevel = priority ? networkConfig.getPriorityServiceLevel() : networkConfig.getServiceLevel();
+            var remote = exchangeInfo(negotiator, connection, serviceLevel);
+
+            // Both sides of a high-priority lane must send with the same service level, even if only one side requested it
+            if (!priority && remote.isPriority()) {
+                serviceLevel = remote.getServiceLevel();
+            }
 
-        // Exchange queue pair information with remote peer
-        var remote = exchangeInfo(negotiator, connection);
+            connect(queuePair, remote, mtu, serviceLevel);
+            connection.getFlowControl().connect(remote.getCreditAddress(), remote.getCreditKey());
 
-        // Connect to the remote's queue pair
-        connect(queuePair, remote, mtu);
+            log.debug("Established connection with {}:{}", remote.getLocalId(), remote.getQueuePairNumber());
 
-        log.debug("Established connection with {}:{}", remote.getLocalId(), remote.getQueuePairNumber());
+            connections.set(id, connection);
 
-        connections[connection.getId()] = connection;
+            return connection;
+        } catch (Throwable e) {
+            connections.remove(id);
+            queuePair.close();
+            release(creditBuffer);
+            if (connection != null) {
+                CloseHelper.quietClose(connection.getQueueFileDescriptor());
+            }
 
-        return connection;
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the connection associated with the channel. Subsequent lookups using the channel will fail.
+     */
+    public InternalConnection remove(InfinibandChannel infinibandChannel) {
+        return Objects.requireNonNull(connections.remove(infinibandChannel.getId()), "Connection does not exist");
     }
 
     public InternalConnection get(InfinibandChannel infinibandChannel) {
@@ -76,19 +114,21 @@ public class ConnectionManager {
     }
 
     private InternalConnection get(int id) {
-        return Objects.requireNonNull(connections[id], "Connection does not exit");
+        return Objects.requireNonNull(connections.get(id), "Connection does not exist");
     }
 
-    private QueuePair.InitialAttributes createInitialAttributes(QueuePairResources queuePairResources, SharedReceiveQueue receiveQueue) {
+    private QueuePair.InitialAttributes createInitialAttributes(CompletionQueue sendCompletionQueue, CompletionQueue receiveCompletionQueue, SharedReceiveQueue receiveQueue) {
         return new QueuePair.InitialAttributes.Builder(
                 QueuePair.Type.RC,
-                queuePairResources.getSendCompletionQueue(),
-                queuePairResources.getReceiveCompletionQueue(),
+                sendCompletionQueue,
+                receiveCompletionQueue,
                 networkConfig.getQueuePairSize(),
                 networkConfig.getQueuePairSize(),
                 networkConfig.getMaxScatterGatherElements(),
                 networkConfig.getMaxScatterGatherElements()
-        ).withSharedReceiveQueue(receiveQueue).build();
+        ).withSharedReceiveQueue(receiveQueue)
+         .withMaxInlineData(Math.max(networkConfig.getInlineThreshold(), ControlMessage.SIZE))
+         .build();
     }
 
     private QueuePair createQueuePair(QueuePair.InitialAttributes initialAttributes, ProtectionDomain protectionDomain) throws IOException {
@@ -97,23 +137,37 @@ public class ConnectionManager {
                 .withState(QueuePair.State.INIT)
                 .withPartitionKeyIndex((short) 0)
                 .withPortNumber(deviceConfig.getPortNumber())
-                .withAccessFlags(AccessFlag.LOCAL_WRITE, AccessFlag.REMOTE_WRITE, AccessFlag.REMOTE_READ));
+                .withAccessFlags(AccessFlag.LOCAL_WRITE, AccessFlag.REMOTE_WRITE, AccessFlag.REMOTE_READ, AccessFlag.REMOTE_ATOMIC));
 
         return queuePair;
     }
 
-    private InternalConnection createConnection(QueuePair queuePair, QueuePairResources queuePairResources, NetworkHandler networkHandler, NetworkService networkService) {
+    private static void release(@Nullable RegisteredBuffer creditBuffer) {
+        if (creditBuffer == null) {
+            return;
+        }
+
+        try {
+            creditBuffer.release();
+        } catch (Exception e) {
+            log.error("Releasing credit buffer failed", e);
+        }
+    }
+
+    private InternalConnection createConnection(int id, QueuePair queuePair, @Nullable RegisteredBuffer creditBuffer, NetworkHandler networkHandler, NetworkService networkService, boolean priority) {
 
         // Query queue pair attributes to set initial queue pair state
         var attributes = queuePair.queryAttributes(QueuePair.AttributeFlag.CAP);
-        var state = new QueuePairState(attributes.capabilities.getMaxSendWorkRequests(), 0);
+        var queuePairSize = attributes.capabilities.getMaxSendWorkRequests();
+        var state = new QueuePairState(queuePairSize, Math.min(networkConfig.getSignalInterval(), queuePairSize));
+
+        // The device may grant more inline data than requested, but we stick to the configured threshold
+        var inlineThreshold = Math.min(networkConfig.getInlineThreshold(), attributes.capabilities.getMaxInlineData());
+        var maxScatterGatherElements = Math.min(networkConfig.getMaxScatterGatherElements(), attributes.capabilities.getMaxSendScatterGatherElements());
 
         // Create event file descriptor for tracking free space on the queue pair
         var queueDescriptor = EventFileDescriptor.create(1, EventFileDescriptor.OpenMode.NONBLOCK);
 
-        // Get the next connection id
-        var id = connectionCounter.getAndIncrement();
-
         var channel = new InfinibandChannel(id, networkService);
 
         // Create a new connection
@@ -122,29 +176,44 @@ public class ConnectionManager {
                 .localId(device.getPortAttributes().getLocalId())
                 .portNumber(deviceConfig.getPortNumber())
                 .queuePair(queuePair)
-                .resources(queuePairResources)
                 .state(state)
+                .inlineThreshold(inlineThreshold)
+                .maxScatterGatherElements(maxScatterGatherElements)
+                .maxMessageSize(networkConfig.getMaxMessageSize())
+                .fragmentSize(Math.min(networkConfig.getMtu(), networkConfig.getReceiveBufferSize()))
+                .coalescingThreshold(networkConfig.getCoalescingThreshold())
+                .coalescer(new Coalescer(networkConfig.getCoalescingLimit()))
+                .priority(priority)
+                .rendezvousThreshold(networkConfig.getRendezvousThreshold())
+                .creditBuffer(creditBuffer)
+                .flowControl(new FlowControl(creditBuffer, networkConfig.getFlowControlCredits()))
+                .rendezvousTable(new RendezvousTable(networkConfig.getMaxRendezvousTransfers()))
                 .queueFileDescriptor(queueDescriptor)
                 .networkHandler(networkHandler)
                 .channel(channel)
                 .build();
     }
 
-    private static QueuePairAddress exchangeInfo(Negotiator negotiator, InternalConnection connection) {
+    private static QueuePairAddress exchangeInfo(Negotiator negotiator, InternalConnection connection, byte serviceLevel) {
+        var creditBuffer = connection.getCreditBuffer();
         return negotiator.exchange(QueuePairAddress.builder()
                 .localId(connection.getLocalId())
                 .portNumber(connection.getPortNumber())
-                .queuePairNumber(connection.getQueuePair().getQueuePairNumber()).build());
+                .queuePairNumber(connection.getQueuePair().getQueuePairNumber())
+                .creditAddress(creditBuffer == null ? 0 : creditBuffer.addressOffset())
+                .creditKey(creditBuffer == null ? 0 : creditBuffer.remoteKey())
+                .priority(connection.isPriority())
+                .serviceLevel(serviceLevel).build());
     }
 
-    private void connect(QueuePair queuePair, QueuePairAddress remote, Mtu mtu) throws IOException {
+    private void connect(QueuePair queuePair, QueuePairAddress remote, Mtu mtu, byte serviceLevel) throws IOException {
         queuePair.modify(QueuePair.Attributes.Builder
                 .buildReadyToReceiveAttributesRC(remote.getQueuePairNumber(), remote.getLocalId(), remote.getPortNumber())
                 .withPathMtu(device.getPortAttributes().getMaxMtu())
                 .withReceivePacketNumber(0)
                 .withMaxDestinationAtomicReads((byte) 1)
                 .withMinRnrTimer(networkConfig.getRnrTimer())
-                .withServiceLevel(networkConfig.getServiceLevel())
+                .withServiceLevel(serviceLevel)
                 .withSourcePathBits((byte) 0)
                 .withIsGlobal(false));
 
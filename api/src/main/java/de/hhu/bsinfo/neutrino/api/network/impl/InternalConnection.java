@@ -3,11 +3,19 @@ package de.hhu.bsinfo.neutrino.api.network.impl;
 import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
 import de.hhu.bsinfo.neutrino.api.network.NetworkHandler;
 import de.hhu.bsinfo.neutrino.api.network.RemoteHandle;
+import de.hhu.bsinfo.neutrino.api.network.RequestStatus;
+import de.hhu.bsinfo.neutrino.api.network.ScatterGatherList;
 import de.hhu.bsinfo.neutrino.api.network.impl.agent.ReceiveAgent;
 import de.hhu.bsinfo.neutrino.api.network.impl.agent.SendAgent;
+import de.hhu.bsinfo.neutrino.api.network.impl.buffer.BufferPool;
 import de.hhu.bsinfo.neutrino.api.network.impl.buffer.RequestBuffer;
-import de.hhu.bsinfo.neutrino.api.network.impl.util.QueuePairResources;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.Coalescer;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ControlBacklog;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ControlMessage;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.FlowControl;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.QueuePairState;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.Reassembly;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.RendezvousTable;
 import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
 import de.hhu.bsinfo.neutrino.util.EventFileDescriptor;
 import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
@@ -16,6 +24,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
@@ -44,14 +53,84 @@ public final @Data class InternalConnection {
     private final QueuePair queuePair;
 
     /**
-     * The associated queue pair's resources.
+     * The associated queue pair's state.
      */
-    private final QueuePairResources resources;
+    private final QueuePairState state;
 
     /**
-     * The associated queue pair's state.
+     * Messages up to this size are copied into the work request instead of a pooled buffer.
      */
-    private final QueuePairState state;
+    private final int inlineThreshold;
+
+    /**
+     * The maximum size of a single message.
+     */
+    private final int maxMessageSize;
+
+    /**
+     * Messages above this size are split into fragments, which fit into a pooled buffer and the remote's receive buffers.
+     */
+    private final int fragmentSize;
+
+    /**
+     * Messages up to this size are coalesced if coalescing is enabled.
+     */
+    private final int coalescingThreshold;
+
+    /**
+     * Packs coalescable messages. Only accessed by the send agent.
+     */
+    private final Coalescer coalescer;
+
+    /**
+     * Whether small messages are coalesced.
+     */
+    private volatile boolean coalescing;
+
+    /**
+     * Whether the network handler should be notified once this connection accepts requests again.
+     */
+    private volatile boolean writableRequested;
+
+    /**
+     * Reassembles fragmented messages received on this connection.
+     */
+    private final Reassembly reassembly = new Reassembly();
+
+    /**
+     * The buffer the remote writes granted credits into or null if flow control is disabled.
+     */
+    private final @Nullable RegisteredBuffer creditBuffer;
+
+    /**
+     * Tracks the credits exchanged with the remote.
+     */
+    private final FlowControl flowControl;
+
+    /**
+     * Whether the send agent posts requests queued on this connection before those of all its other connections.
+     */
+    private final boolean priority;
+
+    /**
+     * Messages sent from registered buffers above this size are read by the remote using the rendezvous protocol.
+     */
+    private final int rendezvousThreshold;
+
+    /**
+     * Messages currently read from the remote using the rendezvous protocol.
+     */
+    private final RendezvousTable rendezvousTable;
+
+    /**
+     * Holds requests the agents could not append to the request buffer without waiting for space.
+     */
+    private final ControlBacklog controlBacklog = new ControlBacklog();
+
+    /**
+     * The maximum number of segments a vectored operation may consist of.
+     */
+    private final int maxScatterGatherElements;
 
     /**
      * Used for signaling free slots on the queue pair.
@@ -63,6 +142,12 @@ public final @Data class InternalConnection {
      */
     private final RequestBuffer requestBuffer = new RequestBuffer(128 * MemoryAlignment.PAGE.value());
 
+    /**
+     * Holds the pooled buffers of a fragmented message while it is appended. Reused by each sending thread, so that sends do not allocate.
+     */
+    private final ThreadLocal<BufferPool.PooledBuffer[]> fragmentBuffers =
+            ThreadLocal.withInitial(this::newFragmentBuffers);
+
     /**
      * The network handler associated with this connection.
      */
@@ -106,9 +191,126 @@ public final @Data class InternalConnection {
     }
 
     public void send(int id, DirectBuffer buffer, int offset, int length) {
+        checkMessageSize(length);
+        if (coalescing && length <= coalescingThreshold) {
+            Requests.appendCoalescableSend(id, requestBuffer, buffer, offset, length);
+            return;
+        }
+
+        if (length <= inlineThreshold) {
+            Requests.appendInlineSend(id, requestBuffer, buffer, offset, length);
+            return;
+        }
+
+        if (length > fragmentSize) {
+            Requests.appendFragmentedSend(id, requestBuffer, sendAgent.getBufferPool(), fragmentBuffers.get(), buffer, offset, length, fragmentSize);
+            return;
+        }
+
         Requests.appendSend(id, sendAgent.claim(), requestBuffer, buffer, offset, length);
     }
 
+    public void send(int id, RegisteredBuffer buffer, int offset, int length) {
+
+        // Announce large messages, so that the remote can read them directly from the registered buffer.
+        // Buffers the remote may not access are sent in fragments instead.
+        if (length > rendezvousThreshold && buffer.isRemotelyAccessible()) {
+            Requests.appendControl(requestBuffer, ControlMessage.RENDEZVOUS_REQUEST, buffer.addressOffset() + offset, buffer.remoteKey(), length, id);
+            return;
+        }
+
+        checkMessageSize(length);
+        if (coalescing && length <= coalescingThreshold) {
+            Requests.appendCoalescableSend(id, requestBuffer, buffer, offset, length);
+            return;
+        }
+
+        if (length <= inlineThreshold) {
+            Requests.appendInlineSend(id, requestBuffer, buffer, offset, length);
+            return;
+        }
+
+        if (length > fragmentSize) {
+            Requests.appendDirectFragmentedSend(id, requestBuffer, buffer, offset, length, fragmentSize);
+            return;
+        }
+
+        Requests.appendDirectSend(id, requestBuffer, buffer, offset, length);
+    }
+
+    /**
+     * Like {@link #send(int, DirectBuffer, int, int)}, but returns immediately if the request can not be queued.
+     */
+    public RequestStatus trySend(int id, DirectBuffer buffer, int offset, int length) {
+        checkMessageSize(length);
+        if (coalescing && length <= coalescingThreshold) {
+            return status(Requests.tryAppendCoalescableSend(id, requestBuffer, buffer, offset, length));
+        }
+
+        if (length <= inlineThreshold) {
+            return status(Requests.tryAppendInlineSend(id, requestBuffer, buffer, offset, length));
+        }
+
+        if (length > fragmentSize) {
+            return Requests.tryAppendFragmentedSend(id, requestBuffer, sendAgent.getBufferPool(), fragmentBuffers.get(), buffer, offset, length, fragmentSize);
+        }
+
+        var target = sendAgent.tryClaim();
+        if (target == null) {
+            return RequestStatus.NO_BUFFER;
+        }
+
+        // Return the pooled buffer if the request could not be queued
+        if (!Requests.tryAppendSend(id, target, requestBuffer, buffer, offset, length)) {
+            target.release();
+            return RequestStatus.RING_FULL;
+        }
+
+        return RequestStatus.SUCCESS;
+    }
+
+    /**
+     * Like {@link #send(int, RegisteredBuffer, int, int)}, but returns immediately if the request can not be queued.
+     */
+    public RequestStatus trySend(int id, RegisteredBuffer buffer, int offset, int length) {
+        if (length > rendezvousThreshold && buffer.isRemotelyAccessible()) {
+            return status(Requests.tryAppendControl(requestBuffer, ControlMessage.RENDEZVOUS_REQUEST, buffer.addressOffset() + offset, buffer.remoteKey(), length, id));
+        }
+
+        checkMessageSize(length);
+        if (coalescing && length <= coalescingThreshold) {
+            return status(Requests.tryAppendCoalescableSend(id, requestBuffer, buffer, offset, length));
+        }
+
+        if (length <= inlineThreshold) {
+            return status(Requests.tryAppendInlineSend(id, requestBuffer, buffer, offset, length));
+        }
+
+        if (length > fragmentSize) {
+            return status(Requests.tryAppendDirectFragmentedSend(id, requestBuffer, buffer, offset, length, fragmentSize));
+        }
+
+        return status(Requests.tryAppendDirectSend(id, requestBuffer, buffer, offset, length));
+    }
+
+    public RegisteredBuffer claim() {
+        return sendAgent.claim();
+    }
+
+    public void commit(int id, RegisteredBuffer buffer, int length) {
+        // Buffers are released into the pool of this connection's send agent once the request completes
+        if (!(buffer instanceof BufferPool.PooledBuffer) || !sendAgent.getBufferPool().owns((BufferPool.PooledBuffer) buffer)) {
+            throw new IllegalArgumentException("Buffer was not claimed from this channel");
+        }
+
+        if (length < 0 || length > buffer.capacity()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the buffer's capacity of " + buffer.capacity() + " bytes");
+        }
+
+        checkFragmentSize(length);
+        Requests.appendPooledSend(id, (BufferPool.PooledBuffer) buffer, requestBuffer, length);
+    }
+
     public void read(int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
         Requests.appendRead(id, requestBuffer, handle, buffer, offset, length);
     }
@@ -117,6 +319,89 @@ public final @Data class InternalConnection {
         Requests.appendWrite(id, requestBuffer, buffer, offset, length, handle);
     }
 
+    public RequestStatus tryRead(int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
+        return status(Requests.tryAppendRead(id, requestBuffer, handle, buffer, offset, length));
+    }
+
+    public RequestStatus tryWrite(int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle) {
+        return status(Requests.tryAppendWrite(id, requestBuffer, buffer, offset, length, handle));
+    }
+
+    private static RequestStatus status(boolean queued) {
+        return queued ? RequestStatus.SUCCESS : RequestStatus.RING_FULL;
+    }
+
+
+    public void writeWithImmediate(int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle, int immediateData) {
+        Requests.appendWriteWithImmediate(id, requestBuffer, buffer, offset, length, handle, immediateData);
+    }
+
+    public void fetchAdd(int id, RemoteHandle handle, long value, RegisteredBuffer result, int offset) {
+        checkAtomic(handle, result, offset);
+        Requests.appendFetchAdd(id, requestBuffer, handle, value, result, offset);
+    }
+
+    public void compareSwap(int id, RemoteHandle handle, long expected, long value, RegisteredBuffer result, int offset) {
+        checkAtomic(handle, result, offset);
+        Requests.appendCompareSwap(id, requestBuffer, handle, expected, value, result, offset);
+    }
+
+    private static void checkAtomic(RemoteHandle handle, RegisteredBuffer result, int offset) {
+        if ((handle.getAddress() & (Requests.ATOMIC_OPERAND_SIZE - 1)) != 0) {
+            throw new IllegalArgumentException("Remote address of atomic operations must be 8-byte aligned");
+        }
+
+        result.boundsCheck(offset, Requests.ATOMIC_OPERAND_SIZE);
+    }
+
+    public void send(int id, ScatterGatherList source) {
+        checkSegments(source);
+        checkFragmentSize(source.totalLength());
+        Requests.appendVectoredSend(id, requestBuffer, source);
+    }
+
+    public void read(int id, RemoteHandle handle, ScatterGatherList target) {
+        checkSegments(target);
+        Requests.appendVectoredRead(id, requestBuffer, handle, target);
+    }
+
+    public void write(int id, ScatterGatherList source, RemoteHandle handle) {
+        checkSegments(source);
+        Requests.appendVectoredWrite(id, requestBuffer, source, handle);
+    }
+
+    private BufferPool.PooledBuffer[] newFragmentBuffers() {
+        return new BufferPool.PooledBuffer[(maxMessageSize + fragmentSize - 1) / fragmentSize];
+    }
+
+    private void checkMessageSize(long length) {
+        if (length > maxMessageSize) {
+            throw new IllegalArgumentException("Message size " + length + " exceeds maximum of " + maxMessageSize + " bytes");
+        }
+    }
+
+    private void checkFragmentSize(long length) {
+        if (length > fragmentSize) {
+            throw new IllegalArgumentException("Message size " + length + " exceeds maximum of " + fragmentSize + " bytes per work request");
+        }
+    }
+
+    private void checkSegments(ScatterGatherList list) {
+        if (list.size() == 0 || list.size() > maxScatterGatherElements) {
+            throw new IllegalArgumentException("Vectored operations require between 1 and " + maxScatterGatherElements + " segments");
+        }
+    }
+
+    /**
+     * Hands a buffer a message announced using the rendezvous protocol could not be read into back to the network handler.
+     */
+    public void returnRendezvousTarget(RegisteredBuffer target) {
+        try {
+            networkHandler.onAllocationFailed(channel, target);
+        } catch (Exception e) {
+            log.warn("Returning rendezvous target buffer of connection #{} failed", id, e);
+        }
+    }
 
     public long freeSlots() {
         return queueFileDescriptor.read();
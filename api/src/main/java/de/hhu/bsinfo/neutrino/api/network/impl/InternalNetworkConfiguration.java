@@ -1,12 +1,17 @@
 package de.hhu.bsinfo.neutrino.api.network.impl;
 
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
+import de.hhu.bsinfo.neutrino.api.network.CompletionMode;
+import de.hhu.bsinfo.neutrino.api.network.IdleMode;
 import de.hhu.bsinfo.neutrino.api.network.NetworkConfiguration;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.Coalescer;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.FlowControl;
 import de.hhu.bsinfo.neutrino.verbs.DeviceAttributes;
 import de.hhu.bsinfo.neutrino.verbs.PortAttributes;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.BitUtil;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +23,10 @@ import javax.annotation.PostConstruct;
 @Getter @Setter
 public class InternalNetworkConfiguration implements NetworkConfiguration {
 
+    private static final int MIN_RECEIVE_BUFFER_SIZE = 64;
+
+    private static final int MAX_RENDEZVOUS_TRANSFERS = 1 << Short.SIZE;
+
     /**
      * The maximum transmission unit used for new connections.
      */
@@ -29,15 +38,66 @@ public class InternalNetworkConfiguration implements NetworkConfiguration {
     private int queuePairSize = 128;
 
     /**
-     * The maximum number of completion events within a completion queue.
+     * The maximum number of completion events within a completion queue shared by an agent's connections.
      */
-    private int completionQueueSize = 128;
+    private int completionQueueSize = 8192;
 
     /**
      * The shared receive queue's size.
      */
     private int sharedReceiveQueueSize = 128;
 
+    /**
+     * The size of each buffer posted to the shared receive queue.
+     */
+    private int receiveBufferSize = 4096;
+
+    /**
+     * Whether receive buffers are only reused after handlers released them.
+     */
+    private boolean deferredReceiveRelease = false;
+
+    /**
+     * The maximum size of a single message. Messages larger than a receive buffer are fragmented.
+     */
+    private int maxMessageSize = 65536;
+
+    /**
+     * Messages up to this size are packed together on channels with coalescing enabled.
+     */
+    private int coalescingThreshold = 512;
+
+    /**
+     * The maximum number of bytes coalesced into a single work request.
+     */
+    private int coalescingLimit = 4096;
+
+    /**
+     * The number of microseconds coalesced messages may be held back waiting for
+     * further messages. Messages are sent once no more messages are queued if this value is zero.
+     */
+    private int coalescingTimeout = 0;
+
+    /**
+     * Messages sent from registered buffers above this size are read by the remote.
+     */
+    private int rendezvousThreshold = 32768;
+
+    /**
+     * The maximum number of concurrent rendezvous transfers per connection.
+     */
+    private int maxRendezvousTransfers = 64;
+
+    /**
+     * The number of receive buffers handlers may retain without starving the shared receive queue.
+     */
+    private int retainedReceiveBuffers = 1024;
+
+    /**
+     * The number of messages each side may send before the remote grants further credits. Zero disables flow control.
+     */
+    private int flowControlCredits = 0;
+
     /**
      * The maximum number of scatter-gather elements per work request.
      */
@@ -95,6 +155,11 @@ public class InternalNetworkConfiguration implements NetworkConfiguration {
      */
     private byte serviceLevel = 0;
 
+    /**
+     * The service level used by the high-priority lane of prioritized channels.
+     */
+    private byte priorityServiceLevel = 1;
+
     /**
      * The minmal delay a queue pair waits for an ACK/NACK before
      * resending the message.
@@ -152,11 +217,75 @@ public class InternalNetworkConfiguration implements NetworkConfiguration {
      */
     private int receiveWorker = 0;
 
+    /**
+     * Whether event loops and agent buffers are placed on the device's NUMA node.
+     */
+    private boolean numaPlacement = false;
+
+    /**
+     * Whether agent buffer pools and receive rings are backed by huge pages.
+     */
+    private boolean hugePages = false;
+
+    /**
+     * The CPUs send workers are pinned to.
+     */
+    private String sendCpus = "";
+
+    /**
+     * The CPUs receive workers are pinned to.
+     */
+    private String receiveCpus = "";
+
     /**
      * The epoll timeout.
      */
     private int epollTimeout = -1;
 
+    /**
+     * The number of send buffers each application thread caches locally.
+     * Sharding is disabled if this value is zero.
+     */
+    private int bufferShardSize = 0;
+
+    /**
+     * Messages up to this size in bytes are sent as inline data.
+     * Inline sends are disabled if this value is zero.
+     */
+    private int inlineThreshold = 64;
+
+    /**
+     * Every n-th work request is posted signaled. The last work request
+     * within a batch is always signaled. A value of 1 signals every work request.
+     */
+    private int signalInterval = 16;
+
+    /**
+     * The completion mode used by send agents.
+     */
+    private CompletionMode sendCompletionMode = CompletionMode.EPOLL;
+
+    /**
+     * The completion mode used by receive agents.
+     */
+    private CompletionMode receiveCompletionMode = CompletionMode.EPOLL;
+
+    /**
+     * The number of microseconds a busy polling agent spins without finding
+     * work before falling back to epoll. Agents never fall back if this value is negative.
+     */
+    private int busyPollTimeout = 1000;
+
+    /**
+     * What send workers do after a work cycle without any work.
+     */
+    private IdleMode sendIdleMode = IdleMode.BUSY_SPIN;
+
+    /**
+     * What receive workers do after a work cycle without any work.
+     */
+    private IdleMode receiveIdleMode = IdleMode.BUSY_SPIN;
+
     /**
      * The Infiniband device's attributes.
      */
@@ -194,9 +323,77 @@ public class InternalNetworkConfiguration implements NetworkConfiguration {
             log.warn("Set queue pair size to maximum value of {}", deviceAttributes.getMaxQueuePairSize());
         }
 
+        if (signalInterval < 1) {
+            signalInterval = 1;
+            log.warn("Set signal interval to minimum value of 1");
+        }
+
+        if (receiveBufferSize < MIN_RECEIVE_BUFFER_SIZE) {
+            receiveBufferSize = MIN_RECEIVE_BUFFER_SIZE;
+            log.warn("Set receive buffer size to minimum value of {}", MIN_RECEIVE_BUFFER_SIZE);
+        }
+
+        if (!BitUtil.isAligned(receiveBufferSize, MIN_RECEIVE_BUFFER_SIZE)) {
+            receiveBufferSize = BitUtil.align(receiveBufferSize, MIN_RECEIVE_BUFFER_SIZE);
+            log.warn("Aligned receive buffer size to {}", receiveBufferSize);
+        }
+
+        // A single connection must never be allowed to consume more receive buffers than the shared receive queue holds
+        if (flowControlCredits > sharedReceiveQueueSize) {
+            flowControlCredits = sharedReceiveQueueSize;
+            log.warn("Set flow control credits to shared receive queue size of {}", sharedReceiveQueueSize);
+        }
+
+        if (priorityServiceLevel == serviceLevel) {
+            log.warn("Priority service level equals the default service level of {}, so high-priority lanes are not preferred by the fabric", serviceLevel);
+        }
+
+        if (maxRendezvousTransfers > MAX_RENDEZVOUS_TRANSFERS) {
+            maxRendezvousTransfers = MAX_RENDEZVOUS_TRANSFERS;
+            log.warn("Set rendezvous transfers to maximum value of {}", MAX_RENDEZVOUS_TRANSFERS);
+        }
+
         if (mtu > portAttributes.getMaxMtu().getMtuValue()) {
             mtu = portAttributes.getMaxMtu().getMtuValue();
             log.warn("Set mtu to maximum value of {}", portAttributes.getMaxMtu().getMtuValue());
         }
+
+        if (maxMessageSize < receiveBufferSize) {
+            maxMessageSize = receiveBufferSize;
+            log.warn("Set maximum message size to receive buffer size of {}", receiveBufferSize);
+        }
+
+        // All fragments of a message are posted at once and must therefore fit into a queue pair
+        var maxFragmentedSize = (long) Math.min(mtu, receiveBufferSize) * queuePairSize;
+        if (maxMessageSize > maxFragmentedSize) {
+            maxMessageSize = (int) Math.min(maxFragmentedSize, Integer.MAX_VALUE);
+            log.warn("Set maximum message size to {}, since all fragments must fit into a queue pair", maxMessageSize);
+        }
+
+        // All fragments of a message acquire their credits at once and must therefore not require more credits than the remote grants initially
+        if (flowControlCredits > 0) {
+            var maxCreditedSize = FlowControl.maxMessageSize(flowControlCredits, Math.min(mtu, receiveBufferSize));
+            if (maxMessageSize > maxCreditedSize) {
+                maxMessageSize = (int) Math.min(maxCreditedSize, Integer.MAX_VALUE);
+                log.warn("Set maximum message size to {}, since all fragments must fit into the initial flow control credits", maxMessageSize);
+            }
+        }
+
+        // Coalesced messages are sent from pooled buffers into the remote's receive buffers
+        if (coalescingLimit > Math.min(mtu, receiveBufferSize)) {
+            coalescingLimit = Math.min(mtu, receiveBufferSize);
+            log.warn("Set coalescing limit to maximum value of {}", coalescingLimit);
+        }
+
+        // Each message requires a length prefix and space for its request identifier within the pooled buffer
+        if (coalescingThreshold > coalescingLimit - Coalescer.FRAME_HEADER_SIZE - Integer.BYTES) {
+            coalescingThreshold = coalescingLimit - Coalescer.FRAME_HEADER_SIZE - Integer.BYTES;
+            log.warn("Set coalescing threshold to maximum value of {}", coalescingThreshold);
+        }
+
+        if (rendezvousThreshold > maxMessageSize) {
+            rendezvousThreshold = maxMessageSize;
+            log.warn("Set rendezvous threshold to maximum message size of {}", maxMessageSize);
+        }
     }
 }
@@ -3,23 +3,32 @@ package de.hhu.bsinfo.neutrino.api.network.impl;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDeviceConfig;
 import de.hhu.bsinfo.neutrino.api.network.*;
+import de.hhu.bsinfo.neutrino.api.network.impl.agent.EpollAgent;
 import de.hhu.bsinfo.neutrino.api.network.impl.agent.ReceiveAgent;
 import de.hhu.bsinfo.neutrino.api.network.impl.agent.SendAgent;
 import de.hhu.bsinfo.neutrino.api.network.impl.event.EventLoopGroup;
 import de.hhu.bsinfo.neutrino.api.util.BaseService;
 import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
 import de.hhu.bsinfo.neutrino.verbs.Mtu;
 import de.hhu.bsinfo.neutrino.verbs.ThreadDomain;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
 import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -74,9 +83,15 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         var sendWorkerCount = networkConfig.getSendWorker() == 0 ? availableProcessors / 2 : networkConfig.getSendWorker();
         var receiveWorkerCount = networkConfig.getReceiveWorker() == 0 ? availableProcessors / 2 : networkConfig.getReceiveWorker();
 
+        // Pin event loops to the configured CPUs or to all CPUs of the device's NUMA node
+        var nodeCpus = networkConfig.isNumaPlacement() ? NumaUtil.getNodeCpus(device.getNumaNode()) : new BitSet();
+        if (networkConfig.isNumaPlacement() && nodeCpus.isEmpty()) {
+            log.warn("CPUs of NUMA node {} are unknown, event loops are not pinned to the device's node", device.getNumaNode());
+        }
+
         // Create event loop groups
-        sendGroup = new EventLoopGroup<>("send", sendWorkerCount, () -> BusySpinIdleStrategy.INSTANCE);
-        receiveGroup = new EventLoopGroup<>("receive", receiveWorkerCount, () -> BusySpinIdleStrategy.INSTANCE);
+        sendGroup = new EventLoopGroup<>("send", sendWorkerCount, idleStrategy(networkConfig.getSendIdleMode()), affinity(networkConfig.getSendCpus(), nodeCpus));
+        receiveGroup = new EventLoopGroup<>("receive", receiveWorkerCount, idleStrategy(networkConfig.getReceiveIdleMode()), affinity(networkConfig.getReceiveCpus(), nodeCpus));
 
         // Check if Thread Domains are supported
         ThreadDomain threadDomain = null;
@@ -105,6 +120,37 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         connectionManager = new ConnectionManager(sharedResources);
     }
 
+    private static Supplier<IdleStrategy> idleStrategy(IdleMode mode) {
+        switch (mode) {
+            case BUSY_SPIN:
+                return () -> BusySpinIdleStrategy.INSTANCE;
+            case YIELD:
+                return () -> YieldingIdleStrategy.INSTANCE;
+            case BACKOFF:
+                return BackoffIdleStrategy::new;
+            case PARK:
+                return SleepingIdleStrategy::new;
+            default:
+                throw new IllegalArgumentException("Unknown idle mode " + mode);
+        }
+    }
+
+    /**
+     * Assigns a single CPU of the list to each event loop in turn or all default CPUs if the list is empty.
+     */
+    private static IntFunction<BitSet> affinity(String cpuList, BitSet defaultCpus) {
+        var cpus = NumaUtil.parseCpuList(cpuList).stream().toArray();
+        if (cpus.length == 0) {
+            return index -> defaultCpus;
+        }
+
+        return index -> {
+            var affinity = new BitSet();
+            affinity.set(cpus[index % cpus.length]);
+            return affinity;
+        };
+    }
+
     @Override
     protected void onStart() throws Exception {
 
@@ -141,6 +187,16 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         throw new UnsupportedOperationException("not implemented");
     }
 
+    @Override
+    public void setCoalescing(InfinibandChannel channel, boolean enabled) {
+        connectionManager.get(channel).setCoalescing(enabled);
+    }
+
+    @Override
+    public void setReceivePaused(InfinibandChannel channel, boolean paused) {
+        connectionManager.get(channel).getFlowControl().setPaused(paused);
+    }
+
     public void send(InfinibandChannel channel, int id, DirectBuffer buffer, int offset, int length) {
 
         // Retrieve the actual connection
@@ -150,6 +206,81 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         internalConnection.send(id, buffer, offset, length);
     }
 
+    @Override
+    public void send(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Send the data directly from the caller's buffer
+        internalConnection.send(id, buffer, offset, length);
+    }
+
+    @Override
+    public RequestStatus trySend(InfinibandChannel channel, int id, DirectBuffer buffer, int offset, int length) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Try to send the data without waiting for resources
+        return internalConnection.trySend(id, buffer, offset, length);
+    }
+
+    @Override
+    public RequestStatus trySend(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Try to send the data directly from the caller's buffer without waiting for resources
+        return internalConnection.trySend(id, buffer, offset, length);
+    }
+
+    @Override
+    public RequestStatus tryRead(InfinibandChannel channel, int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Try to read the data without waiting for resources
+        return internalConnection.tryRead(id, handle, buffer, offset, length);
+    }
+
+    @Override
+    public RequestStatus tryWrite(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Try to write the data without waiting for resources
+        return internalConnection.tryWrite(id, buffer, offset, length, handle);
+    }
+
+    @Override
+    public void requestWritable(InfinibandChannel channel) {
+        connectionManager.get(channel).setWritableRequested(true);
+    }
+
+    @Override
+    public RegisteredBuffer claim(InfinibandChannel channel) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Claim a buffer from the connection's send agent
+        return internalConnection.claim();
+    }
+
+    @Override
+    public void commit(InfinibandChannel channel, int id, RegisteredBuffer buffer, int length) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Send the claimed buffer using the actual connection
+        internalConnection.commit(id, buffer, length);
+    }
+
     @Override
     public void read(InfinibandChannel channel, int id, RemoteHandle handle, RegisteredBuffer buffer, int offset, int length) {
 
@@ -170,6 +301,66 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         internalConnection.write(id, buffer, offset, length, handle);
     }
 
+    @Override
+    public void writeWithImmediate(InfinibandChannel channel, int id, RegisteredBuffer buffer, int offset, int length, RemoteHandle handle, int immediateData) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Write the data and notify the remote using the immediate data
+        internalConnection.writeWithImmediate(id, buffer, offset, length, handle, immediateData);
+    }
+
+    @Override
+    public void fetchAdd(InfinibandChannel channel, int id, RemoteHandle handle, long value, RegisteredBuffer result, int offset) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Add the value to the remote counter
+        internalConnection.fetchAdd(id, handle, value, result, offset);
+    }
+
+    @Override
+    public void compareSwap(InfinibandChannel channel, int id, RemoteHandle handle, long expected, long value, RegisteredBuffer result, int offset) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Swap the remote value if it matches the expected value
+        internalConnection.compareSwap(id, handle, expected, value, result, offset);
+    }
+
+    @Override
+    public void send(InfinibandChannel channel, int id, ScatterGatherList source) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Send all segments using a single work request
+        internalConnection.send(id, source);
+    }
+
+    @Override
+    public void read(InfinibandChannel channel, int id, RemoteHandle handle, ScatterGatherList target) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Scatter the remote data into all segments using a single work request
+        internalConnection.read(id, handle, target);
+    }
+
+    @Override
+    public void write(InfinibandChannel channel, int id, ScatterGatherList source, RemoteHandle handle) {
+
+        // Retrieve the actual connection
+        var internalConnection = connectionManager.get(channel);
+
+        // Gather all segments into the remote buffer using a single work request
+        internalConnection.write(id, source, handle);
+    }
+
     @Override
     public InfinibandDevice getDevice() {
         return device;
@@ -177,9 +368,33 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
 
     @Override
     public InfinibandChannel connect(Negotiator negotiator, NetworkHandler networkHandler, Mtu mtu) throws IOException {
-        // Get next send and receive agent
-        var sendAgent = sendGroup.next().getAgent();
-        var receiveAgent = receiveGroup.next().getAgent();
+        // Get the least loaded send and receive agent
+        var sendAgent = sendGroup.next(EpollAgent.LOAD_ORDER).getAgent();
+        var receiveAgent = receiveGroup.next(EpollAgent.LOAD_ORDER).getAgent();
+
+        // Connect to the remote and return the channel
+        return connect(negotiator, networkHandler, mtu, sendAgent, receiveAgent, false).getChannel();
+    }
+
+    @Override
+    public PriorityChannel connectPrioritized(IntFunction<Negotiator> negotiators, NetworkHandler networkHandler, Mtu mtu) throws IOException {
+        // Both lanes share the same agents, so that the send agent can post high-priority requests first
+        var sendAgent = sendGroup.next(EpollAgent.LOAD_ORDER).getAgent();
+        var receiveAgent = receiveGroup.next(EpollAgent.LOAD_ORDER).getAgent();
+
+        var high = connect(negotiators.apply(0), networkHandler, mtu, sendAgent, receiveAgent, true);
+        try {
+            var low = connect(negotiators.apply(1), networkHandler, mtu, sendAgent, receiveAgent, false);
+            return new PriorityChannel(high.getChannel(), low.getChannel());
+        } catch (IOException | RuntimeException e) {
+
+            // Do not leak the high-priority lane
+            disconnect(high.getChannel());
+            throw e;
+        }
+    }
+
+    private InternalConnection connect(Negotiator negotiator, NetworkHandler networkHandler, Mtu mtu, SendAgent sendAgent, ReceiveAgent receiveAgent, boolean priority) throws IOException {
 
         // Connect to the remote
         var connection = connectionManager.connect(
@@ -188,7 +403,9 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
                 networkHandler,
                 receiveAgent.getReceiveQueue(),
                 sendAgent.getResources(),
-                this
+                receiveAgent.getResources(),
+                this,
+                priority
         );
 
         // Assign send agent to connection
@@ -199,7 +416,19 @@ public class InternalNetworkService extends BaseService<NetworkConfiguration> im
         connection.setReceiveAgent(receiveAgent);
         receiveAgent.add(connection);
 
-        // Return channel
-        return connection.getChannel();
+        return connection;
+    }
+
+    @Override
+    public void disconnect(InfinibandChannel channel) {
+
+        // Remove the connection, so that the channel can no longer be used
+        var connection = connectionManager.remove(channel);
+
+        // Stop receiving messages on this connection
+        connection.getReceiveAgent().remove(connection);
+
+        // The send agent fails all outstanding requests and destroys the queue pair
+        connection.getSendAgent().remove(connection);
     }
 }
@@ -1,18 +1,25 @@
 package de.hhu.bsinfo.neutrino.api.network.impl;
 
 import de.hhu.bsinfo.neutrino.api.network.RemoteHandle;
+import de.hhu.bsinfo.neutrino.api.network.RequestStatus;
+import de.hhu.bsinfo.neutrino.api.network.ScatterGatherList;
 import de.hhu.bsinfo.neutrino.api.network.impl.accessor.ScatterGatherAccessor;
 import de.hhu.bsinfo.neutrino.api.network.impl.accessor.SendRequestAccessor;
 import de.hhu.bsinfo.neutrino.api.network.impl.buffer.BufferPool;
 import de.hhu.bsinfo.neutrino.api.network.impl.buffer.RequestBuffer;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ControlMessage;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.FlowControl;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.Identifier;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.RequestFlag;
 import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
 import de.hhu.bsinfo.neutrino.util.BitMask;
 import de.hhu.bsinfo.neutrino.verbs.ScatterGatherElement;
 import de.hhu.bsinfo.neutrino.verbs.SendWorkRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.DirectBuffer;
+import org.agrona.UnsafeAccess;
 import org.agrona.hints.ThreadHints;
+import org.jetbrains.annotations.Nullable;
 
 import static org.agrona.concurrent.ringbuffer.RingBuffer.INSUFFICIENT_CAPACITY;
 
@@ -23,29 +30,89 @@ public class Requests {
     private static final ScatterGatherElement ELEMENT_ACCESSOR = new ScatterGatherElement(0);
 
     private static final int SCATTER_GATHER_OFFSET = SendRequestAccessor.ELEMENT_SIZE;
-    private static final int SEND_FLAGS = BitMask.intOf(SendWorkRequest.SendFlag.SIGNALED);
+    /**
+     * Requests are appended unsignaled. The {@link de.hhu.bsinfo.neutrino.api.network.impl.util.RequestProcessor}
+     * decides which of them get signaled once they are posted.
+     */
+    private static final int SEND_FLAGS = 0;
+    private static final int INLINE_SEND_FLAGS = BitMask.intOf(SendWorkRequest.SendFlag.INLINE);
+    private static final short INLINE_REQUEST_FLAGS = RequestFlag.INLINE.getValue();
+    private static final short POOLED_REQUEST_FLAGS = RequestFlag.POOLED.getValue();
+    private static final short DIRECT_REQUEST_FLAGS = RequestFlag.DIRECT.getValue();
     private static final int SEND_OPCODE = SendWorkRequest.OpCode.SEND.getValue();
     private static final int READ_OPCODE = SendWorkRequest.OpCode.RDMA_READ.getValue();
     private static final int WRITE_OPCODE = SendWorkRequest.OpCode.RDMA_WRITE.getValue();
+    private static final int WRITE_IMMEDIATE_OPCODE = SendWorkRequest.OpCode.RDMA_WRITE_WITH_IMM.getValue();
+    private static final int SEND_IMMEDIATE_OPCODE = SendWorkRequest.OpCode.SEND_WITH_IMM.getValue();
+    private static final short CONTROL_REQUEST_FLAGS = (short) (RequestFlag.CONTROL.getValue() | RequestFlag.INLINE.getValue());
+    private static final short RENDEZVOUS_REQUEST_FLAGS = RequestFlag.RENDEZVOUS.getValue();
+    private static final short FRAGMENT_REQUEST_FLAGS = RequestFlag.FRAGMENT.getValue();
+    private static final short COALESCE_REQUEST_FLAGS = (short) (RequestFlag.COALESCE.getValue() | RequestFlag.INLINE.getValue());
+    private static final short BATCH_REQUEST_FLAGS = RequestFlag.BATCH.getValue();
+    private static final int FETCH_ADD_OPCODE = SendWorkRequest.OpCode.ATOMIC_FETCH_AND_ADD.getValue();
+    private static final int COMPARE_SWAP_OPCODE = SendWorkRequest.OpCode.ATOMIC_CMP_AND_SWP.getValue();
+
+    /**
+     * Atomic operations always operate on 8 bytes.
+     */
+    public static final int ATOMIC_OPERAND_SIZE = Long.BYTES;
 
     private static final int NO_SCATTER_GATHER = 0;
     private static final int SINGLE_SCATTER_GATHER = 1;
 
+    /**
+     * Claims space for a request within the request buffer. If blocking is set, this method
+     * spins until space is available. Otherwise, it returns immediately if the buffer is full.
+     */
+    private static int claim(RequestBuffer buffer, int scatterGatherElements, int payloadLength, boolean blocking) {
+        int index;
+        while ((index = buffer.tryClaim(scatterGatherElements, payloadLength)) == INSUFFICIENT_CAPACITY && blocking) {
+            ThreadHints.onSpinWait();
+        }
+
+        return index;
+    }
+
     public static void appendSend(int id, BufferPool.PooledBuffer target, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
 
         // Copy bytes into send buffer
         target.putBytes(0, data, offset, length);
 
-        int index;
-        while ((index = buffer.tryClaim(SINGLE_SCATTER_GATHER)) == INSUFFICIENT_CAPACITY) {
-            ThreadHints.onSpinWait();
+        appendPooledSend(id, target, buffer, length);
+    }
+
+    /**
+     * Like {@link #appendSend}, but returns false instead of waiting if the request buffer is full.
+     * The caller keeps ownership of the pooled buffer in this case.
+     */
+    public static boolean tryAppendSend(int id, BufferPool.PooledBuffer target, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
+
+        // Copy bytes into send buffer
+        target.putBytes(0, data, offset, length);
+
+        return appendPooledSend(id, target, buffer, length, false);
+    }
+
+    /**
+     * Appends a send request for a pooled buffer the caller already wrote its message into.
+     * The pooled buffer is released as soon as the request completes.
+     */
+    public static void appendPooledSend(int id, BufferPool.PooledBuffer target, RequestBuffer buffer, int length) {
+        appendPooledSend(id, target, buffer, length, true);
+    }
+
+    private static boolean appendPooledSend(int id, BufferPool.PooledBuffer target, RequestBuffer buffer, int length, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
         }
 
         var requestHandle = buffer.memoryAddress() + index;
         var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
 
         // Set work request parameters
-        SendRequestAccessor.setId(requestHandle, Identifier.create(id, (short) 0, (short) target.getIdentifier()));
+        SendRequestAccessor.setId(requestHandle, Identifier.create(id, POOLED_REQUEST_FLAGS, (short) target.getIdentifier()));
         SendRequestAccessor.setListHandle(requestHandle, elementHandle);
         SendRequestAccessor.setListLength(requestHandle, 1);
         SendRequestAccessor.setOpCode(requestHandle, SEND_OPCODE);
@@ -58,13 +125,307 @@ public class Requests {
 
         // Commit the written request
         buffer.commitWrite(index);
+        return true;
     }
 
-    public static void appendRead(int id, RequestBuffer buffer, RemoteHandle source, RegisteredBuffer target, int offset, int length) {
+    /**
+     * Appends a send request which transfers the data directly from the caller's registered buffer.
+     * The buffer must not be modified until the request completes.
+     */
+    public static void appendDirectSend(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length) {
+        appendDirectSend(id, buffer, source, offset, length, true);
+    }
+
+    public static boolean tryAppendDirectSend(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length) {
+        return appendDirectSend(id, buffer, source, offset, length, false);
+    }
+
+    private static boolean appendDirectSend(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(id, DIRECT_REQUEST_FLAGS));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, SEND_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
 
+        // Set scatter gather element parameters
+        ScatterGatherAccessor.setAddress(elementHandle, source.addressOffset() + offset);
+        ScatterGatherAccessor.setLength(elementHandle, length);
+        ScatterGatherAccessor.setLocalKey(elementHandle, source.localKey());
+
+        // Commit the written request
+        buffer.commitWrite(index);
+        return true;
+    }
+
+    /**
+     * Appends a message, which is split into fragments copied into pooled buffers. The caller-owned targets
+     * array holds the claimed buffers while the message is appended and must have room for every fragment.
+     */
+    public static void appendFragmentedSend(int id, RequestBuffer buffer, BufferPool pool, BufferPool.PooledBuffer[] targets, DirectBuffer data, int offset, int length, int fragmentSize) {
+        appendFragments(id, buffer, pool, targets, true, data, 0, offset, length, fragmentSize);
+    }
+
+    /**
+     * Like {@link #appendFragmentedSend}, but fails instead of waiting for space within the request buffer or for pooled buffers.
+     */
+    public static RequestStatus tryAppendFragmentedSend(int id, RequestBuffer buffer, BufferPool pool, BufferPool.PooledBuffer[] targets, DirectBuffer data, int offset, int length, int fragmentSize) {
+        return appendFragments(id, buffer, pool, targets, false, data, 0, offset, length, fragmentSize);
+    }
+
+    /**
+     * Appends a message, which is split into fragments sent directly from the caller's registered buffer.
+     * The buffer must not be modified until the request completes.
+     */
+    public static void appendDirectFragmentedSend(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, int fragmentSize) {
+        appendFragments(id, buffer, null, null, true, source, source.localKey(), offset, length, fragmentSize);
+    }
+
+    public static boolean tryAppendDirectFragmentedSend(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, int fragmentSize) {
+        return appendFragments(id, buffer, null, null, false, source, source.localKey(), offset, length, fragmentSize) == RequestStatus.SUCCESS;
+    }
+
+    /**
+     * Appends all fragments of a message as a single chain, so that they are posted using one doorbell. Each fragment
+     * carries the message's total length as immediate data, which the remote uses for reassembling the message.
+     * Only the last fragment's completion is reported to the network handler.
+     */
+    private static RequestStatus appendFragments(int id, RequestBuffer buffer, @Nullable BufferPool pool, @Nullable BufferPool.PooledBuffer[] targets, boolean blocking, DirectBuffer data, int localKey, int offset, int length, int fragmentSize) {
+
+        // Claim pooled buffers for all fragments before claiming space within the request buffer, since
+        // buffers are only returned to the pool after the send agent read the records preceding ours
+        final var fragments = (length + fragmentSize - 1) / fragmentSize;
+        if (pool != null && !claimAll(pool, targets, fragments, blocking)) {
+            return RequestStatus.NO_BUFFER;
+        }
+
+        // Claim space for all fragments at once
         int index;
-        while ((index = buffer.tryClaim(SINGLE_SCATTER_GATHER)) == INSUFFICIENT_CAPACITY) {
+        while ((index = buffer.tryClaimChain(fragments)) == INSUFFICIENT_CAPACITY) {
+            if (!blocking) {
+                releaseAll(targets, fragments);
+                return RequestStatus.RING_FULL;
+            }
+
+            ThreadHints.onSpinWait();
+        }
+
+        final var firstHandle = buffer.memoryAddress() + index;
+        var requestHandle = firstHandle;
+        var immediateData = ControlMessage.FRAGMENT | length;
+        for (int i = 0; i < fragments; i++) {
+            var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+            var fragmentOffset = i * fragmentSize;
+            var fragmentLength = Math.min(fragmentSize, length - fragmentOffset);
+            var last = i == fragments - 1;
+
+            // Copy the fragment into a pooled buffer or send it directly from the registered source
+            short flags;
+            short attachement;
+            long address;
+            int key;
+            if (pool == null) {
+                flags = DIRECT_REQUEST_FLAGS;
+                attachement = 0;
+                address = data.addressOffset() + offset + fragmentOffset;
+                key = localKey;
+            } else {
+                var target = targets[i];
+                targets[i] = null;
+                target.putBytes(0, data, offset + fragmentOffset, fragmentLength);
+                flags = POOLED_REQUEST_FLAGS;
+                attachement = (short) target.getIdentifier();
+                address = target.addressOffset();
+                key = target.getLocalKey();
+            }
+
+            // Set work request parameters
+            SendRequestAccessor.setId(requestHandle, Identifier.create(id, last ? flags : (short) (flags | FRAGMENT_REQUEST_FLAGS), attachement));
+            SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+            SendRequestAccessor.setListLength(requestHandle, 1);
+            SendRequestAccessor.setOpCode(requestHandle, SEND_IMMEDIATE_OPCODE);
+            SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+            SendRequestAccessor.setImmediateData(requestHandle, immediateData);
+
+            // Set scatter gather element parameters
+            ScatterGatherAccessor.setAddress(elementHandle, address);
+            ScatterGatherAccessor.setLength(elementHandle, fragmentLength);
+            ScatterGatherAccessor.setLocalKey(elementHandle, key);
+
+            // Link the fragment with its successor
+            if (!last) {
+                SendRequestAccessor.setNext(requestHandle, requestHandle + RequestBuffer.CHAIN_ELEMENT_SIZE);
+                requestHandle += RequestBuffer.CHAIN_ELEMENT_SIZE;
+            }
+        }
+
+        // Commit the written chain
+        buffer.commitWrite(index);
+        return RequestStatus.SUCCESS;
+    }
+
+    /**
+     * Claims a pooled buffer for each of the first count elements of the specified array. Buffers are never held while waiting
+     * for others, so that concurrent callers can not starve each other. If blocking is not set, this
+     * method returns false as soon as the pool is depleted.
+     */
+    private static boolean claimAll(BufferPool pool, BufferPool.PooledBuffer[] targets, int count, boolean blocking) {
+        for (int i = 0; i < count; i++) {
+            targets[i] = pool.tryClaim();
+            if (targets[i] != null) {
+                continue;
+            }
+
+            // Return all buffers claimed so far and start over
+            releaseAll(targets, i);
+            if (!blocking) {
+                return false;
+            }
+
             ThreadHints.onSpinWait();
+            i = -1;
+        }
+
+        return true;
+    }
+
+    private static void releaseAll(@Nullable BufferPool.PooledBuffer[] targets, int count) {
+        if (targets == null) {
+            return;
+        }
+
+        for (int i = 0; i < count && targets[i] != null; i++) {
+            targets[i].release();
+            targets[i] = null;
+        }
+    }
+
+    public static void appendInlineSend(int id, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
+        appendInline(id, INLINE_REQUEST_FLAGS, buffer, data, offset, length, true);
+    }
+
+    public static boolean tryAppendInlineSend(int id, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
+        return appendInline(id, INLINE_REQUEST_FLAGS, buffer, data, offset, length, false);
+    }
+
+    /**
+     * Appends a message, which the send agent packs together with other coalescable messages
+     * queued on the same connection. The message is stored like an inline send's payload.
+     */
+    public static void appendCoalescableSend(int id, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
+        appendInline(id, COALESCE_REQUEST_FLAGS, buffer, data, offset, length, true);
+    }
+
+    public static boolean tryAppendCoalescableSend(int id, RequestBuffer buffer, DirectBuffer data, int offset, int length) {
+        return appendInline(id, COALESCE_REQUEST_FLAGS, buffer, data, offset, length, false);
+    }
+
+    private static boolean appendInline(int id, short requestFlags, RequestBuffer buffer, DirectBuffer data, int offset, int length, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, length, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+        var payloadHandle = elementHandle + ScatterGatherAccessor.ELEMENT_SIZE;
+
+        // Copy bytes directly behind the scatter gather element, since
+        // the device copies inline data while the request is being posted
+        UnsafeAccess.UNSAFE.copyMemory(data.byteArray(), data.addressOffset() + offset, null, payloadHandle, length);
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(id, requestFlags));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, SEND_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, INLINE_SEND_FLAGS);
+
+        // Set scatter gather element parameters (the local key is ignored for inline data)
+        ScatterGatherAccessor.setAddress(elementHandle, payloadHandle);
+        ScatterGatherAccessor.setLength(elementHandle, length);
+        ScatterGatherAccessor.setLocalKey(elementHandle, 0);
+
+        // Commit the written request
+        buffer.commitWrite(index);
+        return true;
+    }
+
+    /**
+     * Writes a work request sending a buffer of coalesced messages to the specified location. The number of
+     * messages is stored as the request's context and the pooled buffer's identifier as its attachement.
+     */
+    public static void prepareBatchSend(long requestHandle, BufferPool.PooledBuffer source, int length, int count) {
+
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(count, BATCH_REQUEST_FLAGS, (short) source.getIdentifier()));
+        SendRequestAccessor.setNext(requestHandle, 0);
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, SEND_IMMEDIATE_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+        SendRequestAccessor.setImmediateData(requestHandle, ControlMessage.COALESCED);
+
+        // Set scatter gather element parameters
+        ScatterGatherAccessor.setAddress(elementHandle, source.addressOffset());
+        ScatterGatherAccessor.setLength(elementHandle, length);
+        ScatterGatherAccessor.setLocalKey(elementHandle, source.getLocalKey());
+    }
+
+    /**
+     * Writes a work request storing the total number of credits granted to the remote within its credit buffer.
+     * The value is sent as inline data from the element's trailing payload. Since the write carries no
+     * immediate data, it does not consume one of the remote's receive buffers.
+     */
+    public static void prepareCreditGrant(long requestHandle, long credits, long address, int key) {
+
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+        var payloadHandle = elementHandle + ScatterGatherAccessor.ELEMENT_SIZE;
+
+        // Write the number of granted credits
+        UnsafeAccess.UNSAFE.putLong(payloadHandle, credits);
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(0, CONTROL_REQUEST_FLAGS, (short) ControlMessage.CREDIT_GRANT));
+        SendRequestAccessor.setNext(requestHandle, 0);
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, WRITE_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, INLINE_SEND_FLAGS);
+        SendRequestAccessor.setRdmaRemoteAddress(requestHandle, address);
+        SendRequestAccessor.setRdmaRemoteKey(requestHandle, key);
+
+        // Set scatter gather element parameters (the local key is ignored for inline data)
+        ScatterGatherAccessor.setAddress(elementHandle, payloadHandle);
+        ScatterGatherAccessor.setLength(elementHandle, FlowControl.SIZE);
+        ScatterGatherAccessor.setLocalKey(elementHandle, 0);
+    }
+
+    public static void appendRead(int id, RequestBuffer buffer, RemoteHandle source, RegisteredBuffer target, int offset, int length) {
+        appendRead(id, buffer, source, target, offset, length, true);
+    }
+
+    public static boolean tryAppendRead(int id, RequestBuffer buffer, RemoteHandle source, RegisteredBuffer target, int offset, int length) {
+        return appendRead(id, buffer, source, target, offset, length, false);
+    }
+
+    private static boolean appendRead(int id, RequestBuffer buffer, RemoteHandle source, RegisteredBuffer target, int offset, int length, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
         }
 
         var requestHandle = buffer.memoryAddress() + index;
@@ -86,13 +447,30 @@ public class Requests {
 
         // Commit the written request
         buffer.commitWrite(index);
+        return true;
     }
 
     public static void appendWrite(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, RemoteHandle target) {
+        appendWrite(id, buffer, WRITE_OPCODE, source, offset, length, target, 0, true);
+    }
 
-        int index;
-        while ((index = buffer.tryClaim(SINGLE_SCATTER_GATHER)) == INSUFFICIENT_CAPACITY) {
-            ThreadHints.onSpinWait();
+    public static boolean tryAppendWrite(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, RemoteHandle target) {
+        return appendWrite(id, buffer, WRITE_OPCODE, source, offset, length, target, 0, false);
+    }
+
+    /**
+     * Appends a write request, which additionally consumes a receive work request on
+     * the remote side and notifies it using the specified immediate data.
+     */
+    public static void appendWriteWithImmediate(int id, RequestBuffer buffer, RegisteredBuffer source, int offset, int length, RemoteHandle target, int immediateData) {
+        appendWrite(id, buffer, WRITE_IMMEDIATE_OPCODE, source, offset, length, target, immediateData, true);
+    }
+
+    private static boolean appendWrite(int id, RequestBuffer buffer, int opCode, RegisteredBuffer source, int offset, int length, RemoteHandle target, int immediateData, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
         }
 
         var requestHandle = buffer.memoryAddress() + index;
@@ -102,8 +480,9 @@ public class Requests {
         SendRequestAccessor.setId(requestHandle, Identifier.create(id, (short) 0));
         SendRequestAccessor.setListHandle(requestHandle, elementHandle);
         SendRequestAccessor.setListLength(requestHandle, 1);
-        SendRequestAccessor.setOpCode(requestHandle, WRITE_OPCODE);
+        SendRequestAccessor.setOpCode(requestHandle, opCode);
         SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+        SendRequestAccessor.setImmediateData(requestHandle, immediateData);
         SendRequestAccessor.setRdmaRemoteAddress(requestHandle, target.getAddress());
         SendRequestAccessor.setRdmaRemoteKey(requestHandle, target.getKey());
 
@@ -114,5 +493,174 @@ public class Requests {
 
         // Commit the written request
         buffer.commitWrite(index);
+        return true;
+    }
+
+    public static void appendVectoredSend(int id, RequestBuffer buffer, ScatterGatherList source) {
+        appendVectored(id, buffer, SEND_OPCODE, source, 0, 0);
+    }
+
+    public static void appendVectoredRead(int id, RequestBuffer buffer, RemoteHandle source, ScatterGatherList target) {
+        appendVectored(id, buffer, READ_OPCODE, target, source.getAddress(), source.getKey());
+    }
+
+    public static void appendVectoredWrite(int id, RequestBuffer buffer, ScatterGatherList source, RemoteHandle target) {
+        appendVectored(id, buffer, WRITE_OPCODE, source, target.getAddress(), target.getKey());
+    }
+
+    private static void appendVectored(int id, RequestBuffer buffer, int opCode, ScatterGatherList list, long remoteAddress, int remoteKey) {
+
+        // Claim space for one scatter gather element per segment
+        final var count = list.size();
+        var index = claim(buffer, count, 0, true);
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(id, DIRECT_REQUEST_FLAGS));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, count);
+        SendRequestAccessor.setOpCode(requestHandle, opCode);
+        SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+        if (opCode != SEND_OPCODE) {
+            SendRequestAccessor.setRdmaRemoteAddress(requestHandle, remoteAddress);
+            SendRequestAccessor.setRdmaRemoteKey(requestHandle, remoteKey);
+        }
+
+        // Set scatter gather element parameters for each segment
+        for (int i = 0; i < count; i++) {
+            var segment = list.buffer(i);
+            var segmentHandle = elementHandle + (long) i * ScatterGatherAccessor.ELEMENT_SIZE;
+            ScatterGatherAccessor.setAddress(segmentHandle, segment.addressOffset() + list.offset(i));
+            ScatterGatherAccessor.setLength(segmentHandle, list.length(i));
+            ScatterGatherAccessor.setLocalKey(segmentHandle, segment.localKey());
+        }
+
+        // Commit the written request
+        buffer.commitWrite(index);
+    }
+
+    public static void appendFetchAdd(int id, RequestBuffer buffer, RemoteHandle target, long value, RegisteredBuffer result, int offset) {
+        appendAtomic(id, buffer, FETCH_ADD_OPCODE, target, value, 0, result, offset);
+    }
+
+    public static void appendCompareSwap(int id, RequestBuffer buffer, RemoteHandle target, long expected, long value, RegisteredBuffer result, int offset) {
+        appendAtomic(id, buffer, COMPARE_SWAP_OPCODE, target, expected, value, result, offset);
+    }
+
+    private static void appendAtomic(int id, RequestBuffer buffer, int opCode, RemoteHandle target, long compareAdd, long swap, RegisteredBuffer result, int offset) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, true);
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(id, (short) 0));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, opCode);
+        SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+        SendRequestAccessor.setAtomicRemoteAddress(requestHandle, target.getAddress());
+        SendRequestAccessor.setAtomicRemoteKey(requestHandle, target.getKey());
+        SendRequestAccessor.setAtomicCompareAdd(requestHandle, compareAdd);
+        SendRequestAccessor.setAtomicSwap(requestHandle, swap);
+
+        // The remote value prior to the operation is written into the result buffer
+        ScatterGatherAccessor.setAddress(elementHandle, result.addressOffset() + offset);
+        ScatterGatherAccessor.setLength(elementHandle, ATOMIC_OPERAND_SIZE);
+        ScatterGatherAccessor.setLocalKey(elementHandle, result.localKey());
+
+        // Commit the written request
+        buffer.commitWrite(index);
+    }
+
+    /**
+     * Appends a control message, which is always sent inline using the message type as immediate data.
+     * The message type is also stored as the request's attachement.
+     */
+    public static void appendControl(RequestBuffer buffer, int type, long address, int key, int length, int token) {
+        appendControl(buffer, type, address, key, length, token, true);
+    }
+
+    public static boolean tryAppendControl(RequestBuffer buffer, int type, long address, int key, int length, int token) {
+        return appendControl(buffer, type, address, key, length, token, false);
+    }
+
+    private static boolean appendControl(RequestBuffer buffer, int type, long address, int key, int length, int token, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, ControlMessage.SIZE, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+        var payloadHandle = elementHandle + ScatterGatherAccessor.ELEMENT_SIZE;
+
+        // Write the control message's payload
+        UnsafeAccess.UNSAFE.putLong(payloadHandle + ControlMessage.ADDRESS_OFFSET, address);
+        UnsafeAccess.UNSAFE.putInt(payloadHandle + ControlMessage.KEY_OFFSET, key);
+        UnsafeAccess.UNSAFE.putInt(payloadHandle + ControlMessage.LENGTH_OFFSET, length);
+        UnsafeAccess.UNSAFE.putInt(payloadHandle + ControlMessage.TOKEN_OFFSET, token);
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(token, CONTROL_REQUEST_FLAGS, (short) type));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, SEND_IMMEDIATE_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, INLINE_SEND_FLAGS);
+        SendRequestAccessor.setImmediateData(requestHandle, type);
+
+        // Set scatter gather element parameters (the local key is ignored for inline data)
+        ScatterGatherAccessor.setAddress(elementHandle, payloadHandle);
+        ScatterGatherAccessor.setLength(elementHandle, ControlMessage.SIZE);
+        ScatterGatherAccessor.setLocalKey(elementHandle, 0);
+
+        // Commit the written request
+        buffer.commitWrite(index);
+        return true;
+    }
+
+    /**
+     * Appends a read request fetching a message announced using the rendezvous protocol. The remote's
+     * token is stored as the request's context and the transfer's slot as its attachement.
+     */
+    public static void appendRendezvousRead(RequestBuffer buffer, int slot, int token, long address, int key, RegisteredBuffer target, int length) {
+        appendRendezvousRead(buffer, slot, token, address, key, target, length, true);
+    }
+
+    public static boolean tryAppendRendezvousRead(RequestBuffer buffer, int slot, int token, long address, int key, RegisteredBuffer target, int length) {
+        return appendRendezvousRead(buffer, slot, token, address, key, target, length, false);
+    }
+
+    private static boolean appendRendezvousRead(RequestBuffer buffer, int slot, int token, long address, int key, RegisteredBuffer target, int length, boolean blocking) {
+
+        var index = claim(buffer, SINGLE_SCATTER_GATHER, 0, blocking);
+        if (index == INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+
+        var requestHandle = buffer.memoryAddress() + index;
+        var elementHandle = requestHandle + SCATTER_GATHER_OFFSET;
+
+        // Set work request parameters
+        SendRequestAccessor.setId(requestHandle, Identifier.create(token, RENDEZVOUS_REQUEST_FLAGS, (short) slot));
+        SendRequestAccessor.setListHandle(requestHandle, elementHandle);
+        SendRequestAccessor.setListLength(requestHandle, 1);
+        SendRequestAccessor.setOpCode(requestHandle, READ_OPCODE);
+        SendRequestAccessor.setFlags(requestHandle, SEND_FLAGS);
+        SendRequestAccessor.setRdmaRemoteAddress(requestHandle, address);
+        SendRequestAccessor.setRdmaRemoteKey(requestHandle, key);
+
+        // Set scatter gather element parameters
+        ScatterGatherAccessor.setAddress(elementHandle, target.addressOffset());
+        ScatterGatherAccessor.setLength(elementHandle, length);
+        ScatterGatherAccessor.setLocalKey(elementHandle, target.localKey());
+
+        // Commit the written request
+        buffer.commitWrite(index);
+        return true;
     }
 }
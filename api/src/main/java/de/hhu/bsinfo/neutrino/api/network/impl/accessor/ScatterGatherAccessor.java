@@ -19,6 +19,14 @@ public class ScatterGatherAccessor {
     private static final int LENGTH_OFFSET = STRUCT_INFO.getOffset("length");
     private static final int LOCAL_KEY_OFFSET = STRUCT_INFO.getOffset("lkey");
 
+    public static long getAddress(long handle) {
+        return UNSAFE.getLong(handle + ADDRESS_OFFSET);
+    }
+
+    public static int getLength(long handle) {
+        return UNSAFE.getInt(handle + LENGTH_OFFSET);
+    }
+
     public static void setAddress(long handle, long address) {
         UNSAFE.putLong(handle + ADDRESS_OFFSET, address);
     }
@@ -39,14 +39,26 @@ public class SendRequestAccessor {
     private static final int UD_REMOTE_QP_NUM_OFFSET = STRUCT_INFO.getOffset("wr.ud.remote_qpn");
     private static final int UD_REMOTE_QP_KEY_OFFSET = STRUCT_INFO.getOffset("wr.ud.remote_qkey");
 
+    public static long getId(long handle) {
+        return UNSAFE.getLong(handle + ID_OFFSET);
+    }
+
     public static void setId(long handle, long id) {
         UNSAFE.putLong(handle + ID_OFFSET, id);
     }
 
+    public static long getNext(long handle) {
+        return UNSAFE.getLong(handle + NEXT_OFFSET);
+    }
+
     public static void setNext(long handle, long next) {
         UNSAFE.putLong(handle + NEXT_OFFSET, next);
     }
 
+    public static long getListHandle(long handle) {
+        return UNSAFE.getLong(handle + LIST_OFFSET);
+    }
+
     public static void setListHandle(long handle, long list) {
         UNSAFE.putLong(handle + LIST_OFFSET, list);
     }
@@ -55,10 +67,18 @@ public class SendRequestAccessor {
         UNSAFE.putInt(handle + LIST_LENGTH_OFFSET, length);
     }
 
+    public static int getOpCode(long handle) {
+        return UNSAFE.getInt(handle + OPCODE_OFFSET);
+    }
+
     public static void setOpCode(long handle, int opCode) {
         UNSAFE.putInt(handle + OPCODE_OFFSET, opCode);
     }
 
+    public static int getFlags(long handle) {
+        return UNSAFE.getInt(handle + FLAGS_OFFSET);
+    }
+
     public static void setFlags(long handle, int flags) {
         UNSAFE.putInt(handle + FLAGS_OFFSET, flags);
     }
@@ -78,4 +98,20 @@ public class SendRequestAccessor {
     public static void setRdmaRemoteKey(long handle, int key) {
         UNSAFE.putInt(handle + RDMA_KEY_OFFSET, key);
     }
+
+    public static void setAtomicRemoteAddress(long handle, long address) {
+        UNSAFE.putLong(handle + ATOMIC_ADDRESS_OFFSET, address);
+    }
+
+    public static void setAtomicCompareAdd(long handle, long value) {
+        UNSAFE.putLong(handle + ATOMIC_COMPARE_OFFSET, value);
+    }
+
+    public static void setAtomicSwap(long handle, long value) {
+        UNSAFE.putLong(handle + ATOMIC_SWAP_OFFSET, value);
+    }
+
+    public static void setAtomicRemoteKey(long handle, int key) {
+        UNSAFE.putInt(handle + ATOMIC_KEY_OFFSET, key);
+    }
 }
@@ -3,6 +3,7 @@ package de.hhu.bsinfo.neutrino.api.network.impl.agent;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
 import de.hhu.bsinfo.neutrino.api.device.InfinibandDeviceConfig;
 import de.hhu.bsinfo.neutrino.api.network.NetworkConfiguration;
+import de.hhu.bsinfo.neutrino.api.network.impl.util.CompletionResources;
 import de.hhu.bsinfo.neutrino.verbs.ProtectionDomain;
 import de.hhu.bsinfo.neutrino.verbs.ThreadDomain;
 import lombok.Builder;
@@ -37,4 +38,9 @@ public @Value class AgentResources {
      * The protection domain used by the associated agent.
      */
     ProtectionDomain protectionDomain;
+
+    /**
+     * The completion queue shared by all connections of the associated agent.
+     */
+    CompletionResources completionResources;
 }
@@ -1,11 +1,15 @@
 package de.hhu.bsinfo.neutrino.api.network.impl.agent;
 
+import de.hhu.bsinfo.neutrino.api.network.CompletionMode;
 import de.hhu.bsinfo.neutrino.api.network.impl.InternalConnection;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.ConnectionEvent;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.EpollWatchList;
 import de.hhu.bsinfo.neutrino.util.Epoll;
+import de.hhu.bsinfo.neutrino.util.FileDescriptor;
 import de.hhu.bsinfo.neutrino.util.function.ThrowingBiConsumer;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.Int2ObjectHashMap;
 import org.agrona.concurrent.Agent;
 import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
 import org.agrona.concurrent.QueuedPipe;
@@ -13,6 +17,9 @@ import org.agrona.hints.ThreadHints;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 
 @Slf4j
@@ -20,12 +27,31 @@ public abstract class EpollAgent implements Agent {
 
     private static final int WAIT_INDEFINITELY = -1;
 
-    private static final int MAX_CONNECTIONS = 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int MISSING_SLOT = -1;
+
+    /**
+     * The number of nanoseconds between two updates of an agent's work rate.
+     */
+    private static final long LOAD_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Orders agents by the load they are expected to have after a new connection has been added.
+     * Agents with the same expected load are ordered by the number of connections assigned to them.
+     */
+    public static final Comparator<EpollAgent> LOAD_ORDER = Comparator.comparingLong(EpollAgent::getExpectedLoad)
+            .thenComparingInt(EpollAgent::getAssignedConnections);
 
     /**
      * Incoming connections which should be watched by this agent.
      */
-    private final QueuedPipe<InternalConnection> connectionPipe = new ManyToOneConcurrentArrayQueue<>(MAX_CONNECTIONS);
+    private final QueuedPipe<InternalConnection> connectionPipe = new ManyToOneConcurrentArrayQueue<>(INITIAL_CAPACITY);
+
+    /**
+     * Connections which should no longer be watched by this agent.
+     */
+    private final QueuedPipe<InternalConnection> removalPipe = new ManyToOneConcurrentArrayQueue<>(INITIAL_CAPACITY);
 
     /**
      * Watches over connections associated with this agent.
@@ -45,12 +71,118 @@ public abstract class EpollAgent implements Agent {
     /**
      * Method reference for connection processor function.
      */
-    private final ThrowingBiConsumer<InternalConnection, ConnectionEvent> consumer = this::processConnection;
+    private final ThrowingBiConsumer<InternalConnection, ConnectionEvent> consumer = this::dispatch;
 
-    protected EpollAgent(int timeout, ConnectionEvent... events) {
-        watchList = new EpollWatchList<>(MAX_CONNECTIONS);
+    /**
+     * Connections watched by this agent, used for busy polling.
+     */
+    private InternalConnection[] connections = new InternalConnection[INITIAL_CAPACITY];
+
+    /**
+     * The watch list slots used by each connection's queue file descriptor, indexed by connection id.
+     */
+    private final Int2IntHashMap watchSlots = new Int2IntHashMap(MISSING_SLOT);
+
+    /**
+     * Connections watched by this agent indexed by their queue pair number.
+     */
+    private final Int2ObjectHashMap<InternalConnection> queuePairs = new Int2ObjectHashMap<>();
+
+    /**
+     * The number of connections watched by this agent.
+     */
+    private int connectionCount;
+
+    /**
+     * The index of the connection busy polling starts with on the next work cycle.
+     */
+    private int pollIndex;
+
+    /**
+     * The completion mode used by this agent.
+     */
+    private final CompletionMode completionMode;
+
+    /**
+     * The number of nanoseconds this agent busy polls without finding work before falling back to epoll.
+     */
+    private final long busyPollTimeout;
+
+    /**
+     * Whether this agent is currently busy polling.
+     */
+    private boolean polling;
+
+    /**
+     * The last time busy polling found work.
+     */
+    private long lastWorkTime;
+
+    /**
+     * The number of connections assigned to this agent, including those not picked up yet.
+     */
+    private final AtomicInteger assignedConnections = new AtomicInteger();
+
+    /**
+     * The number of work items recorded since the work rate was last updated.
+     */
+    private long recordedWork;
+
+    /**
+     * The last time the work rate was updated.
+     */
+    private volatile long loadTime;
+
+    /**
+     * The moving average of work items processed per second.
+     */
+    private volatile long workRate;
+
+    /**
+     * Whether this agent was busy polling during the current work cycle.
+     */
+    private boolean cyclePolling;
+
+    /**
+     * The time the current work cycle started.
+     */
+    private long cycleTime;
+
+    /**
+     * The number of nanoseconds this agent spent busy polling.
+     */
+    private long pollingTime;
+
+    /**
+     * The number of nanoseconds this agent spent waiting for events using epoll.
+     */
+    private long waitingTime;
+
+    /**
+     * The busy polling time as of the last load update.
+     */
+    private volatile long publishedPollingTime;
+
+    /**
+     * The waiting time as of the last load update.
+     */
+    private volatile long publishedWaitingTime;
+
+    protected EpollAgent(int timeout, CompletionMode completionMode, int busyPollTimeout, ConnectionEvent... events) {
+        watchList = new EpollWatchList<>(INITIAL_CAPACITY);
         this.events = events.clone();
         this.timeout = timeout;
+        this.completionMode = completionMode;
+        this.busyPollTimeout = busyPollTimeout < 0 ? Long.MAX_VALUE : TimeUnit.MICROSECONDS.toNanos(busyPollTimeout);
+        polling = completionMode == CompletionMode.BUSY_POLL;
+        lastWorkTime = System.nanoTime();
+        loadTime = lastWorkTime;
+        cycleTime = lastWorkTime;
+        cyclePolling = polling;
+    }
+
+    protected EpollAgent(int timeout, ConnectionEvent... events) {
+        this(timeout, CompletionMode.EPOLL, 0, events);
     }
 
     protected EpollAgent(ConnectionEvent... events) {
@@ -65,36 +197,230 @@ public abstract class EpollAgent implements Agent {
     @Override
     public int doWork() throws Exception {
 
+        // Account the time since the last work cycle to the state this agent was in and publish its load,
+        // so that new connections can be placed on idle agents
+        track(System.nanoTime());
+
         // Add new connections to our watch list
         if (!connectionPipe.isEmpty()) {
             connectionPipe.drain(this::watch);
         }
 
+        // Remove disconnected connections from our watch list
+        if (!removalPipe.isEmpty()) {
+            removalPipe.drain(this::unwatch);
+        }
+
+        // Spin on the connections' queues while busy polling
+        if (polling) {
+            return poll();
+        }
+
         // Process events
-        return watchList.forEach(timeout, consumer);
+        var processed = watchList.forEach(timeout, consumer);
+
+        // Resume busy polling as soon as there is traffic again
+        if (processed > 0 && completionMode == CompletionMode.BUSY_POLL) {
+            polling = true;
+            lastWorkTime = System.nanoTime();
+        }
+
+        return processed;
+    }
+
+    private void dispatch(InternalConnection connection, ConnectionEvent event) throws IOException {
+
+        // Events without a connection belong to this agent's completion queue
+        if (connection == null) {
+            processCompletions();
+            return;
+        }
+
+        processConnection(connection, event);
+    }
+
+    private int poll() throws IOException {
+
+        // Poll the shared completion queue
+        var workCount = pollCompletions();
+
+        // Poll all connections in a round-robin fashion, starting with a different connection each cycle
+        var count = connectionCount;
+        var start = pollIndex;
+        for (int i = 0; i < count; i++) {
+            var index = start + i;
+            workCount += pollConnection(connections[index < count ? index : index - count]);
+        }
+
+        pollIndex = start + 1 < count ? start + 1 : 0;
+
+        // Fall back to epoll if we did not find any work for too long
+        if (workCount > 0) {
+            lastWorkTime = System.nanoTime();
+        } else if (System.nanoTime() - lastWorkTime > busyPollTimeout) {
+            log.trace("No work found within {}ns, falling back to epoll", busyPollTimeout);
+            polling = false;
+        }
+
+        return workCount;
+    }
+
+    private void track(long now) {
+
+        // Time spent within the idle strategy belongs to the previous work cycle
+        if (cyclePolling) {
+            pollingTime += now - cycleTime;
+        } else {
+            waitingTime += now - cycleTime;
+        }
+
+        cycleTime = now;
+        cyclePolling = polling;
+        updateLoad(now);
+    }
+
+    private void updateLoad(long now) {
+        var elapsed = now - loadTime;
+        if (elapsed < LOAD_INTERVAL) {
+            return;
+        }
+
+        // Halve the weight of all previous intervals
+        var rate = recordedWork * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        workRate = (workRate + rate) >> 1;
+        recordedWork = 0;
+        publishedPollingTime = pollingTime;
+        publishedWaitingTime = waitingTime;
+        loadTime = now;
     }
 
     private void watch(InternalConnection connection) {
+
+        // Grow the connection array if necessary
+        if (connectionCount == connections.length) {
+            connections = Arrays.copyOf(connections, connections.length << 1);
+        }
+
+        connections[connectionCount++] = connection;
+        queuePairs.put(connection.getQueuePair().getQueuePairNumber(), connection);
         log.debug("Registering for {} on connection #{}", Arrays.toString(events), connection.getId());
         for (var event : events) {
             switch (event) {
-                case SEND_READY:
-                    watchList.add(connection.getResources().getSendFileDescriptor(), connection, event, Epoll.EventType.EPOLLIN);
-                    break;
-                case RECEIVE_READY:
-                    watchList.add(connection.getResources().getReceiveFileDescriptor(), connection, event, Epoll.EventType.EPOLLIN);
-                    break;
                 case QUEUE_READY:
-                    watchList.add(connection.getQueueFileDescriptor(), connection, event, Epoll.EventType.EPOLLIN);
+                    watchSlots.put(connection.getId(), watchList.add(connection.getQueueFileDescriptor(), connection, event, Epoll.EventType.EPOLLIN));
                     break;
+                default:
+                    throw new IllegalArgumentException("Event " + event + " can not be watched per connection");
             }
         }
+
+        onConnectionAdded(connection);
+    }
+
+    private void unwatch(InternalConnection connection) {
+
+        // Stop watching the connection's file descriptor
+        var slot = watchSlots.remove(connection.getId());
+        if (slot != MISSING_SLOT) {
+            watchList.remove(connection.getQueueFileDescriptor(), slot);
+        }
+
+        // The queue pair number may already belong to a new connection
+        var queuePairNumber = connection.getQueuePair().getQueuePairNumber();
+        if (queuePairs.get(queuePairNumber) == connection) {
+            queuePairs.remove(queuePairNumber);
+        }
+
+        // Remove the connection from the busy polling array by moving the last connection into its place
+        for (int i = 0; i < connectionCount; i++) {
+            if (connections[i] == connection) {
+                connections[i] = connections[--connectionCount];
+                connections[connectionCount] = null;
+                break;
+            }
+        }
+
+        if (pollIndex >= connectionCount) {
+            pollIndex = 0;
+        }
+
+        log.debug("Removed connection #{}", connection.getId());
+        onConnectionRemoved(connection);
+    }
+
+    /**
+     * Watches over a file descriptor shared by all connections of this agent (e.g. a completion channel).
+     * Must only be called during construction.
+     */
+    protected final void watch(FileDescriptor descriptor, ConnectionEvent event) {
+        watchList.add(descriptor, null, event, Epoll.EventType.EPOLLIN);
+    }
+
+    /**
+     * Returns the connection owning the queue pair with the specified number or null if no such connection exists.
+     */
+    protected final InternalConnection getConnection(int queuePairNumber) {
+        return queuePairs.get(queuePairNumber);
+    }
+
+    /**
+     * Records work items (e.g. posted requests or processed completions) used for estimating this agent's load.
+     */
+    protected final void recordWork(int count) {
+        recordedWork += count;
+    }
+
+    /**
+     * The number of connections assigned to this agent.
+     */
+    public final int getAssignedConnections() {
+        return assignedConnections.get();
+    }
+
+    /**
+     * Estimates the number of work items this agent processes per second after another connection has been
+     * added, assuming that the new connection generates as much work as the average connection of this agent.
+     */
+    public final long getExpectedLoad() {
+        var connections = assignedConnections.get();
+        var rate = getWorkRate();
+        return connections == 0 ? rate : rate + rate / connections;
+    }
+
+    /**
+     * The moving average of work items this agent processed per second.
+     */
+    public final long getWorkRate() {
+
+        // The work rate is not updated while the agent is waiting for events, which means that it is idle
+        return isBlocked() ? 0 : workRate;
+    }
+
+    /**
+     * The number of nanoseconds this agent spent busy polling.
+     */
+    public final long getPollingTime() {
+        return publishedPollingTime;
+    }
+
+    /**
+     * The number of nanoseconds this agent spent waiting for events using epoll, including the time it is waiting right now.
+     */
+    public final long getWaitingTime() {
+        var published = publishedWaitingTime;
+        var blocked = System.nanoTime() - loadTime;
+        return blocked > LOAD_INTERVAL << 1 ? published + blocked : published;
+    }
+
+    private boolean isBlocked() {
+        return System.nanoTime() - loadTime > LOAD_INTERVAL << 1;
     }
 
     /**
      * Adds the connection to this agent's watch list.
      */
     public final void add(InternalConnection connection) {
+        assignedConnections.incrementAndGet();
 
         // Add connection so it will be picked up and added on the next work cycle
         while (!connectionPipe.offer(connection)) {
@@ -105,8 +431,61 @@ public abstract class EpollAgent implements Agent {
         watchList.wake();
     }
 
+    /**
+     * Wakes up this agent if it is waiting for events.
+     */
+    protected final void wakeUp() {
+        watchList.wake();
+    }
+
+    /**
+     * Removes the connection from this agent's watch list.
+     */
+    public final void remove(InternalConnection connection) {
+        assignedConnections.decrementAndGet();
+
+        // Remove connection so it will be dropped on the next work cycle
+        while (!removalPipe.offer(connection)) {
+            ThreadHints.onSpinWait();
+        }
+
+        // Wake up watch list
+        watchList.wake();
+    }
+
+    /**
+     * Called after a connection has been added to this agent's watch list.
+     */
+    protected void onConnectionAdded(InternalConnection connection) {
+
+    }
+
+    /**
+     * Called after a connection has been removed from this agent's watch list.
+     */
+    protected void onConnectionRemoved(InternalConnection connection) {
+
+    }
+
     /**
      * Called every time a connection becomes ready (readable/writeable).
      */
     protected abstract void processConnection(InternalConnection connection, ConnectionEvent event) throws IOException;
+
+    /**
+     * Called every time this agent's completion channel becomes readable.
+     */
+    protected abstract void processCompletions() throws IOException;
+
+    /**
+     * Called for every connection on each work cycle while busy polling. Implementations must
+     * not rely on completion events and return the number of work items processed.
+     */
+    protected abstract int pollConnection(InternalConnection connection) throws IOException;
+
+    /**
+     * Called on each work cycle while busy polling. Implementations must not rely on
+     * completion events and return the number of work completions processed.
+     */
+    protected abstract int pollCompletions() throws IOException;
 }
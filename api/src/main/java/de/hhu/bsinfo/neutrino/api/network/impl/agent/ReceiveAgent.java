@@ -4,22 +4,33 @@ import de.hhu.bsinfo.neutrino.api.network.impl.InternalConnection;
 import de.hhu.bsinfo.neutrino.api.network.impl.NetworkMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.SharedResources;
 import de.hhu.bsinfo.neutrino.api.network.impl.buffer.ReceiveRing;
+import de.hhu.bsinfo.neutrino.api.network.impl.metrics.AgentMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.metrics.ReceiveMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.*;
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
+import de.hhu.bsinfo.neutrino.util.BitMask;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
+import de.hhu.bsinfo.neutrino.verbs.CompletionQueue;
 import de.hhu.bsinfo.neutrino.verbs.ProtectionDomain;
 import de.hhu.bsinfo.neutrino.verbs.SharedReceiveQueue;
 import de.hhu.bsinfo.neutrino.verbs.ThreadDomain;
 import de.hhu.bsinfo.neutrino.verbs.WorkCompletion;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.IntHashSet;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+import org.agrona.concurrent.QueuedPipe;
+import org.agrona.hints.ThreadHints;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
 
 @Slf4j
 public class ReceiveAgent extends EpollAgent {
 
-    private static final ConnectionEvent[] INTERESTS = { ConnectionEvent.RECEIVE_READY };
+    private static final ConnectionEvent[] INTERESTS = {};
+
+    private static final int RENDEZVOUS_PIPE_CAPACITY = 1024;
 
     /**
      * This agent's resources;
@@ -37,15 +48,41 @@ public class ReceiveAgent extends EpollAgent {
     private final QueuePoller queuePoller;
 
     /**
-     * Method reference to completion handler function.
+     * The completion queue shared by all connections of this agent.
      */
-    private final BiConsumer<InternalConnection, WorkCompletion> completionHandler = this::handleWorkCompletion;
+    private final CompletionResources completionResources;
 
     /**
      * A ring buffer which holds receive work requests and their corresponding data buffers.
      */
     private final ReceiveRing receiveRing;
 
+    /**
+     * Whether receive buffers are only posted again after handlers released them.
+     */
+    private final boolean deferredRelease;
+
+    /**
+     * The maximum number of receive work requests within the shared receive queue.
+     */
+    private final int receiveQueueSize;
+
+    /**
+     * The number of receive work requests currently posted in deferred mode.
+     */
+    private int postedReceives;
+
+    /**
+     * Queue pair numbers of connections whose credits are withheld until the shared receive queue is refilled.
+     */
+    private final IntHashSet withheldGrants = new IntHashSet();
+
+    /**
+     * Connections with rendezvous transfers read by the send agent, whose messages are passed to the
+     * network handler on this agent's thread, so that handlers receive all messages on a single thread.
+     */
+    private final QueuedPipe<InternalConnection> rendezvousPipe = new ManyToOneConcurrentArrayQueue<>(RENDEZVOUS_PIPE_CAPACITY);
+
     /**
      * The network metrics.
      */
@@ -56,8 +93,15 @@ public class ReceiveAgent extends EpollAgent {
      */
     private final ReceiveMetrics receiveMetrics;
 
+    /**
+     * Metrics regarding the time this agent spends in each state.
+     */
+    private final AgentMetrics agentMetrics;
+
     public ReceiveAgent(int index, SharedResources sharedResources) throws IOException {
-        super(sharedResources.networkConfig().getEpollTimeout(), INTERESTS);
+        super(sharedResources.networkConfig().getEpollTimeout(),
+                sharedResources.networkConfig().getReceiveCompletionMode(),
+                sharedResources.networkConfig().getBusyPollTimeout(), INTERESTS);
 
         var device = sharedResources.device();
         var deviceConfig = sharedResources.deviceConfig();
@@ -89,37 +133,55 @@ public class ReceiveAgent extends EpollAgent {
 
         metrics = sharedResources.networkMetrics();
         receiveQueue = protectionDomain.createSharedReceiveQueue(builder.build());
-        var receiveQueueSize = receiveQueue.queryAttributes().getMaxWorkRequests();
-
-        receiveRing = new ReceiveRing(receiveQueueSize * 2, protectionDomain::registerMemoryRegion);
+        receiveQueueSize = receiveQueue.queryAttributes().getMaxWorkRequests();
+        deferredRelease = networkConfig.isDeferredReceiveRelease();
+
+        // In deferred mode, additional buffers replace the ones retained by handlers
+        var registrator = MemoryUtil.bindTo(networkConfig.isNumaPlacement() ? device.getNumaNode() : NumaUtil.UNKNOWN_NODE, protectionDomain::registerMemoryRegion);
+        var alignment = networkConfig.isHugePages() ? MemoryAlignment.HUGE_PAGE : MemoryAlignment.PAGE;
+        receiveRing = deferredRelease
+                ? new ReceiveRing(receiveQueueSize + networkConfig.getRetainedReceiveBuffers(), networkConfig.getReceiveBufferSize(), true, alignment, registrator)
+                : new ReceiveRing(receiveQueueSize * 2, networkConfig.getReceiveBufferSize(), false, alignment, registrator);
         queuePoller = new QueuePoller(receiveQueueSize);
+
+        // All receive completions originate from the shared receive queue, so the
+        // completion queue can not overflow as long as it is at least as big
+        completionResources = CompletionResources.create(device, Math.max(networkConfig.getCompletionQueueSize(), receiveQueueSize));
+        watch(completionResources.getFileDescriptor(), ConnectionEvent.RECEIVE_READY);
+
         resources = AgentResources.builder()
                 .device(device)
                 .deviceConfig(deviceConfig)
                 .networkConfig(networkConfig)
                 .threadDomain(threadDomain)
                 .protectionDomain(protectionDomain)
+                .completionResources(completionResources)
                 .build();
 
         receiveMetrics = new ReceiveMetrics(sharedResources.meterRegistry(), index);
+        agentMetrics = new AgentMetrics(sharedResources.meterRegistry(), this, index);
 
 //        receiveMetrics.refillTime().start();
-        receiveRing.post(receiveQueue, receiveQueueSize);
+        if (deferredRelease) {
+            receiveRing.onStarvation(this::wakeUp);
+            refill();
+        } else {
+            receiveRing.post(receiveQueue, receiveQueueSize);
+        }
 //        receiveMetrics.refillTime().stop();
     }
 
     @Override
-    protected void processConnection(InternalConnection connection, ConnectionEvent event) throws IOException {
+    protected void processConnection(InternalConnection connection, ConnectionEvent event) {
+        throw new IllegalStateException("Unknown event");
+    }
 
-        // Check if we got the right kind of event
-        if (event != ConnectionEvent.RECEIVE_READY) {
-            throw new IllegalStateException("Unknown event");
-        }
+    @Override
+    protected void processCompletions() throws IOException {
 
         // Get the completion channel
-        var resources = connection.getResources();
-        var channel = resources.getReceiveCompletionChannel();
-        var queue = resources.getReceiveCompletionQueue();
+        var channel = completionResources.getCompletionChannel();
+        var queue = completionResources.getCompletionQueue();
 
         // We can ignore the completion event, since we know
         // the completion queue the event was generated for
@@ -129,12 +191,30 @@ public class ReceiveAgent extends EpollAgent {
         queue.acknowledgeEvent();
         queue.requestNotification();
 
+        // Process all available completions
+        pollCompletions();
+    }
+
+    @Override
+    protected int pollConnection(InternalConnection connection) {
+        // Receive completions of all connections are polled from the shared completion queue
+        return 0;
+    }
+
+    @Override
+    protected int pollCompletions() throws IOException {
+
         // Poll completions. We use a completion array as big as the shared receive queue.
         // This way, we know that no completions can be left on the completion queue.
-        var completions = queuePoller.poll(queue);
+        var completions = queuePoller.poll(completionResources.getCompletionQueue());
         var length = completions.getLength();
+        recordWork(length);
 //        receiveMetrics.processedRequests().increment(length);
 
+        if (deferredRelease) {
+            return processDeferred(completions);
+        }
+
         // Refill the receive queue
 //        receiveMetrics.refillTime().start();
         receiveRing.post(receiveQueue, length);
@@ -142,11 +222,124 @@ public class ReceiveAgent extends EpollAgent {
 
         // Handle work completions
         for (int i = 0; i < length; i++) {
-            handleWorkCompletion(connection, completions.get(i));
+            handleWorkCompletion(completions.get(i));
         }
+
+        return length;
     }
 
-    private void handleWorkCompletion(InternalConnection connection, WorkCompletion workCompletion) {
+    private int processDeferred(CompletionQueue.WorkCompletionArray completions) throws IOException {
+        var length = completions.getLength();
+        postedReceives -= length;
+
+        // Handle work completions. Each receive buffer is posted again once its last reference has been released.
+        for (int i = 0; i < length; i++) {
+            handleWorkCompletion(completions.get(i));
+        }
+
+        // Refill the receive queue using all buffers released in the meantime
+        refill();
+
+        return length;
+    }
+
+    private void refill() throws IOException {
+        postedReceives += receiveRing.postReleased(receiveQueue, receiveQueueSize - postedReceives);
+
+        // Ask to be woken up as soon as handlers release retained buffers, so that
+        // the shared receive queue does not run dry while we are waiting for events
+        if (postedReceives < receiveQueueSize && receiveRing.awaitRelease()) {
+            postedReceives += receiveRing.postReleased(receiveQueue, receiveQueueSize - postedReceives);
+        }
+
+        // Credits may only be granted again once the consumed receive buffers were replaced
+        if (postedReceives == receiveQueueSize && !withheldGrants.isEmpty()) {
+            grantWithheld();
+        }
+    }
+
+    private void grantWithheld() {
+        var iterator = withheldGrants.iterator();
+        while (iterator.hasNext()) {
+            var connection = getConnection(iterator.nextValue());
+            if (connection != null) {
+                grant(connection);
+            }
+        }
+
+        withheldGrants.clear();
+    }
+
+    private void onReceived(InternalConnection connection) {
+        var flowControl = connection.getFlowControl();
+        if (!flowControl.isEnabled()) {
+            return;
+        }
+
+        // In deferred mode, the consumed receive buffer is posted again after the handler released it
+        flowControl.onReceived();
+        if (deferredRelease) {
+            withheldGrants.add(connection.getQueuePair().getQueuePairNumber());
+            return;
+        }
+
+        grant(connection);
+    }
+
+    private static void grant(InternalConnection connection) {
+
+        // Grants are batched, since the send agent writes each one to the remote
+        var flowControl = connection.getFlowControl();
+        if (flowControl.shouldGrant()) {
+            flowControl.grant();
+        }
+    }
+
+    @Override
+    public int doWork() throws Exception {
+
+        // Deliver messages read using the rendezvous protocol before polling for newer messages
+        if (!rendezvousPipe.isEmpty()) {
+            rendezvousPipe.drain(this::deliverRendezvous);
+        }
+
+        var workCount = super.doWork();
+
+        // Post buffers released by handlers on other threads
+        if (deferredRelease && postedReceives < receiveQueueSize) {
+            refill();
+        }
+
+        return workCount;
+    }
+
+    /**
+     * Called by the send agent once it read a message announced using the rendezvous protocol.
+     */
+    public void onRendezvousFinished(InternalConnection connection) {
+        while (!rendezvousPipe.offer(connection)) {
+            ThreadHints.onSpinWait();
+        }
+
+        wakeUp();
+    }
+
+    private void deliverRendezvous(InternalConnection connection) {
+
+        // Connections are queued once per transfer, so that transfers may already have been delivered
+        var rendezvous = connection.getRendezvousTable();
+        RendezvousTable.Transfer transfer;
+        while ((transfer = rendezvous.pollFinished()) != null) {
+            var target = transfer.getTarget();
+            var length = transfer.getLength();
+            rendezvous.recycle(transfer);
+
+            // Pass the message to the network handler, which now owns the target buffer
+            connection.getNetworkHandler().onMessage(connection.getChannel(), target, 0, length);
+        }
+    }
+
+    private void handleWorkCompletion(WorkCompletion workCompletion) {
 
         // Get work completion id and status
         var id = workCompletion.getId();
@@ -155,12 +348,56 @@ public class ReceiveAgent extends EpollAgent {
         // Check if work completion was successful
         if (status != WorkCompletion.Status.SUCCESS) {
             log.error("Receive work completion {} failed with status {}: {}", (int) id, status, workCompletion.getStatusMessage());
+            discard(workCompletion);
             return;
         }
 
+        // Get the connection owning the queue pair the message was received on
+        var connection = getConnection(workCompletion.getQueuePairNumber());
+        if (connection == null) {
+            log.error("Received message on unknown queue pair {}", workCompletion.getQueuePairNumber());
+            discard(workCompletion);
+            return;
+        }
+
+        // Every received message consumed one of the credits granted to the remote
+        onReceived(connection);
+
         // Get the network handler associated with this connection
         var handler = connection.getNetworkHandler();
 
+        // Only writes, fragments, coalesced messages and control messages carry immediate data
+        if (BitMask.isSet(workCompletion.getFlags(), WorkCompletion.WorkCompletionFlag.IMM)) {
+
+            // The data of a write was already placed and the receive buffer holds no payload
+            if (workCompletion.getOpCode() == WorkCompletion.OpCode.RECV_RDMA_WITH_IMM) {
+                discard(workCompletion);
+                handler.onWriteNotification(connection.getChannel(), workCompletion.getImmediateData(), workCompletion.getByteCount());
+                return;
+            }
+
+            if ((workCompletion.getImmediateData() & ControlMessage.FRAGMENT) != 0) {
+                handleFragment(connection, workCompletion);
+                return;
+            }
+
+            if ((workCompletion.getImmediateData() & ControlMessage.COALESCED) != 0) {
+                handleCoalesced(connection, workCompletion);
+                return;
+            }
+
+            handleControlMessage(connection, workCompletion);
+            return;
+        }
+
+        // Pass a reference-counted view to the network handler, which it may retain
+        if (deferredRelease) {
+            var message = receiveRing.acquire((int) workCompletion.getId(), workCompletion.getByteCount());
+            handler.onMessage(connection.getChannel(), message);
+            message.release();
+            return;
+        }
+
         // Advance receive buffer by number of bytes received
         var source = receiveRing.get((int) workCompletion.getId());
 
@@ -168,6 +405,122 @@ public class ReceiveAgent extends EpollAgent {
         handler.onMessage(connection.getChannel(), source, 0, workCompletion.getByteCount());
     }
 
+    private void handleFragment(InternalConnection connection, WorkCompletion workCompletion) {
+
+        // Copy the fragment and return the receive buffer
+        var reassembly = connection.getReassembly();
+        var fragment = receiveRing.get((int) workCompletion.getId());
+        boolean complete;
+        try {
+            complete = reassembly.append(fragment, workCompletion.getByteCount(), workCompletion.getImmediateData() & ~ControlMessage.FRAGMENT);
+        } catch (IllegalStateException e) {
+            log.error("Discarding message on connection #{}", connection.getId(), e);
+            return;
+        } finally {
+            discard(workCompletion);
+        }
+
+        // Pass the message to the network handler once all fragments arrived
+        if (complete) {
+            connection.getNetworkHandler().onMessage(connection.getChannel(), reassembly.buffer(), 0, reassembly.length());
+        }
+    }
+
+    private void handleCoalesced(InternalConnection connection, WorkCompletion workCompletion) {
+
+        // Pass each length-prefixed message to the network handler
+        var handler = connection.getNetworkHandler();
+        var source = receiveRing.get((int) workCompletion.getId());
+        var end = workCompletion.getByteCount();
+        var position = 0;
+        while (position < end) {
+
+            // Drop the remaining messages of malformed batches instead of passing bytes outside the received ones
+            if (position + Coalescer.FRAME_HEADER_SIZE > end) {
+                log.error("Received truncated frame header at offset {} of a {} byte batch on connection #{}", position, end, connection.getId());
+                break;
+            }
+
+            var length = source.getShort(position) & 0xFFFF;
+            if (position + Coalescer.FRAME_HEADER_SIZE + length > end) {
+                log.error("Received frame of {} bytes at offset {} exceeding a {} byte batch on connection #{}", length, position, end, connection.getId());
+                break;
+            }
+
+            handler.onMessage(connection.getChannel(), source, position + Coalescer.FRAME_HEADER_SIZE, length);
+            position += Coalescer.FRAME_HEADER_SIZE + length;
+        }
+
+        discard(workCompletion);
+    }
+
+    private void handleControlMessage(InternalConnection connection, WorkCompletion workCompletion) {
+
+        // Read the control message's payload and return the receive buffer
+        var payload = receiveRing.get((int) workCompletion.getId());
+        var address = payload.getLong(ControlMessage.ADDRESS_OFFSET);
+        var key = payload.getInt(ControlMessage.KEY_OFFSET);
+        var length = payload.getInt(ControlMessage.LENGTH_OFFSET);
+        var token = payload.getInt(ControlMessage.TOKEN_OFFSET);
+        discard(workCompletion);
+
+        var handler = connection.getNetworkHandler();
+        switch (workCompletion.getImmediateData()) {
+
+            // The remote announced a message we should read
+            case ControlMessage.RENDEZVOUS_REQUEST:
+                onRendezvousRequest(connection, address, key, length, token);
+                break;
+
+            // The remote read one of our messages
+            case ControlMessage.RENDEZVOUS_COMPLETE:
+                handler.onRequestCompleted(connection.getChannel(), token);
+                break;
+
+            // The remote could not read one of our messages
+            case ControlMessage.RENDEZVOUS_FAILED:
+                handler.onRequestFailed(connection.getChannel(), token);
+                break;
+
+            default:
+                log.error("Received unknown control message {}", workCompletion.getImmediateData());
+        }
+    }
+
+    private void onRendezvousRequest(InternalConnection connection, long address, int key, int length, int token) {
+
+        // Control messages are held back instead of waiting for space within the request buffer,
+        // since the send agent draining it may itself wait for this agent
+        var backlog = connection.getControlBacklog();
+
+        // Ask the handler for a buffer to read the message into
+        var target = connection.getNetworkHandler().allocate(connection.getChannel(), length);
+        if (target == null) {
+            backlog.appendControl(connection.getRequestBuffer(), ControlMessage.RENDEZVOUS_FAILED, token);
+            return;
+        }
+
+        // Remember the transfer, so that the send agent can finish it once the read completes
+        var slot = connection.getRendezvousTable().add(target, length);
+        if (slot == -1) {
+            log.warn("Rejecting message of {} bytes, since too many rendezvous transfers are in progress", length);
+            connection.returnRendezvousTarget(target);
+            backlog.appendControl(connection.getRequestBuffer(), ControlMessage.RENDEZVOUS_FAILED, token);
+            return;
+        }
+
+        // Read the message directly from the remote's buffer
+        backlog.appendRendezvousRead(connection.getRequestBuffer(), slot, token, address, key, target, length);
+    }
+
+    private void discard(WorkCompletion workCompletion) {
+
+        // Return the receive buffer, since no handler will release it
+        if (deferredRelease) {
+            receiveRing.acquire((int) workCompletion.getId(), 0).release();
+        }
+    }
+
     public AgentResources getResources() {
         return resources;
     }
@@ -3,24 +3,32 @@ package de.hhu.bsinfo.neutrino.api.network.impl.agent;
 import de.hhu.bsinfo.neutrino.api.network.impl.InternalConnection;
 import de.hhu.bsinfo.neutrino.api.network.impl.NetworkMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.SharedResources;
+import de.hhu.bsinfo.neutrino.api.network.impl.accessor.SendRequestAccessor;
 import de.hhu.bsinfo.neutrino.api.network.impl.buffer.BufferPool;
+import de.hhu.bsinfo.neutrino.api.network.impl.metrics.AgentMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.metrics.SendMetrics;
 import de.hhu.bsinfo.neutrino.api.network.impl.util.*;
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
 import de.hhu.bsinfo.neutrino.util.BitMask;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
 import de.hhu.bsinfo.neutrino.verbs.ProtectionDomain;
 import de.hhu.bsinfo.neutrino.verbs.ThreadDomain;
 import de.hhu.bsinfo.neutrino.verbs.WorkCompletion;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
-import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Slf4j
 public class SendAgent extends EpollAgent {
 
-    private static final ConnectionEvent[] INTERESTS = { ConnectionEvent.QUEUE_READY, ConnectionEvent.SEND_READY };
+    private static final ConnectionEvent[] INTERESTS = { ConnectionEvent.QUEUE_READY };
 
     private static final int MAX_BATCH_SIZE = 1024;
 
@@ -37,7 +45,7 @@ public class SendAgent extends EpollAgent {
     /**
      * Helper object used to process the connection's request ring buffer.
      */
-    private final RequestProcessor requestProcessor = new RequestProcessor();
+    private final RequestProcessor requestProcessor;
 
     /**
      * Helper object used to poll completion queues.
@@ -47,7 +55,25 @@ public class SendAgent extends EpollAgent {
     /**
      * Method reference to completion handler function.
      */
-    private final BiConsumer<InternalConnection, WorkCompletion> completionHandler = this::handleWorkCompletion;
+    private final Consumer<WorkCompletion> completionHandler = this::handleWorkCompletion;
+
+    /**
+     * The completion queue shared by all connections of this agent.
+     */
+    private final CompletionResources completionResources;
+
+    /**
+     * The number of work requests pending within all queue pairs of this agent.
+     * Since every pending request may generate a completion (e.g. when the queue
+     * pair transitions into the error state), this number must never exceed
+     * the shared completion queue's capacity.
+     */
+    private int pendingRequests;
+
+    /**
+     * Connections whose requests are posted before those of all other connections.
+     */
+    private final List<InternalConnection> priorityConnections = new ArrayList<>();
 
     /**
      * The network metrics.
@@ -59,8 +85,15 @@ public class SendAgent extends EpollAgent {
      */
     private final SendMetrics sendMetrics;
 
+    /**
+     * Metrics regarding the time this agent spends in each state.
+     */
+    private final AgentMetrics agentMetrics;
+
     public SendAgent(int index, SharedResources sharedResources) throws IOException {
-        super(sharedResources.networkConfig().getEpollTimeout(), INTERESTS);
+        super(sharedResources.networkConfig().getEpollTimeout(),
+                sharedResources.networkConfig().getSendCompletionMode(),
+                sharedResources.networkConfig().getBusyPollTimeout(), INTERESTS);
 
         var device = sharedResources.device();
         var deviceConfig = sharedResources.deviceConfig();
@@ -87,16 +120,24 @@ public class SendAgent extends EpollAgent {
 
         metrics = sharedResources.networkMetrics();
         queuePoller = new QueuePoller(MAX_BATCH_SIZE);
-        bufferPool = new BufferPool(device::wrapRegion, networkConfig.getQueuePairSize() << 8, networkConfig.getMtu());
+        var registrator = MemoryUtil.bindTo(networkConfig.isNumaPlacement() ? device.getNumaNode() : NumaUtil.UNKNOWN_NODE, device::wrapRegion);
+        var alignment = networkConfig.isHugePages() ? MemoryAlignment.HUGE_PAGE : MemoryAlignment.PAGE;
+        bufferPool = new BufferPool(registrator::wrap, networkConfig.getQueuePairSize() << 8, networkConfig.getMtu(), networkConfig.getBufferShardSize(), alignment);
+        requestProcessor = new RequestProcessor(bufferPool, networkConfig.getQueuePairSize(), TimeUnit.MICROSECONDS.toNanos(networkConfig.getCoalescingTimeout()));
+        completionResources = CompletionResources.create(device, networkConfig.getCompletionQueueSize());
+        watch(completionResources.getFileDescriptor(), ConnectionEvent.SEND_READY);
+
         resources = AgentResources.builder()
                 .device(device)
                 .deviceConfig(deviceConfig)
                 .networkConfig(networkConfig)
                 .threadDomain(threadDomain)
                 .protectionDomain(protectionDomain)
+                .completionResources(completionResources)
                 .build();
 
         sendMetrics = new SendMetrics(sharedResources.meterRegistry(), index);
+        agentMetrics = new AgentMetrics(sharedResources.meterRegistry(), this, index);
     }
 
     @Override
@@ -108,26 +149,18 @@ public class SendAgent extends EpollAgent {
                 onQueueReady(connection);
                 break;
 
-            // A work request was processed
-            case SEND_READY:
-                onSendReady(connection);
-                break;
-
             // We did not subscribe for other events
             default:
                 throw new IllegalStateException("Unexpected value: " + event);
         }
     }
 
-    private void onSendReady(InternalConnection connection) throws IOException {
-
-        // Get connection resources
-        final var resources = connection.getResources();
-        final var state = connection.getState();
+    @Override
+    protected void processCompletions() throws IOException {
 
         // Get the completion queue on which the event occured
-        final var channel = resources.getSendCompletionChannel();
-        final var queue = resources.getSendCompletionQueue();
+        final var channel = completionResources.getCompletionChannel();
+        final var queue = completionResources.getCompletionQueue();
 
 //        sendMetrics.ackTime().start();
 
@@ -142,20 +175,56 @@ public class SendAgent extends EpollAgent {
 //        sendMetrics.ackTime().stop();
 
         // Drain the completion queue
-        var processed = queuePoller.drain(queue, connection, completionHandler);
+        drainCompletions();
+    }
+
+    @Override
+    protected int pollCompletions() throws IOException {
+        return drainCompletions();
+    }
+
+    @Override
+    protected int pollConnection(InternalConnection connection) throws IOException {
+        return onQueueReady(connection);
+    }
+
+    private int drainCompletions() throws IOException {
+
+        // Drain the shared completion queue. Pending requests are retired while handling each work completion,
+        // since a single signaled completion may retire multiple unsignaled requests.
+        var processed = queuePoller.drain(completionResources.getCompletionQueue(), completionHandler);
 //        sendMetrics.processedRequests().increment(processed);
 
-        // Decrease pending requests
-        state.decrementPending(processed);
+        return processed;
+    }
+
+    private int onQueueReady(InternalConnection connection) throws IOException {
+
+        // Always post requests queued on high-priority connections first
+        var commited = 0;
+        if (!connection.isPriority()) {
+            for (int i = 0; i < priorityConnections.size(); i++) {
+                commited += processRequests(priorityConnections.get(i));
+            }
+        }
+
+        return commited + processRequests(connection);
     }
 
-    private void onQueueReady(InternalConnection connection) throws IOException {
+    private int processRequests(InternalConnection connection) throws IOException {
+
+        // Tell the handler that the connection accepts requests again if it asked for it
+        if (connection.isWritableRequested() && isWritable(connection)) {
+            connection.setWritableRequested(false);
+            connection.getNetworkHandler().onWritable(connection.getChannel());
+        }
 
         // Return early if the queue pair has no free slots left
+        // or the shared completion queue could overflow
         final var state = connection.getState();
-        final var remaining = state.remaining();
-        if (remaining == 0) {
-            return;
+        final var remaining = Math.min(state.remaining(), completionResources.getCompletionQueue().getMaxElements() - pendingRequests);
+        if (remaining <= 0) {
+            return 0;
         }
 
         // Query the number of requests queued within this connection
@@ -163,9 +232,18 @@ public class SendAgent extends EpollAgent {
 
 //        sendMetrics.postTime().start();
 
-        // Process outstanding requests
-        requestProcessor.reset();
-        var bytes = requests.read(requestProcessor, remaining);
+        // Process outstanding requests. The request processor tracks all processed requests within the
+        // queue pair's state. Messages held back for coalescing may require one additional slot.
+        final var coalescer = connection.getCoalescer();
+        requestProcessor.reset(state, coalescer, connection.getFlowControl());
+        var reserved = coalescer.isEmpty() ? 0 : 1;
+
+        // Credits granted to the remote bypass all queued requests
+        if (remaining > reserved) {
+            reserved += requestProcessor.grantCredits();
+        }
+
+        var bytes = requests.process(requestProcessor, remaining - reserved);
 
         // Commit the processed requests onto the connection's queue pair
         var commited = requestProcessor.commit(connection.getQueuePair());
@@ -173,81 +251,252 @@ public class SendAgent extends EpollAgent {
 //        sendMetrics.postTime().stop();
 //        sendMetrics.postedRequests().increment(commited);
 
-        // Increment the number of pending work requests
-        state.incrementPending(commited);
-
         // Release the bytes commited to the connection's queue pair
         requests.commitRead(bytes);
+        pendingRequests += commited;
+
+        // Requests held back by the agents are queued once space is available and posted with the next requests
+        connection.getControlBacklog().flush(requests);
+        recordWork(commited);
+
+        return commited;
     }
 
-    private void handleWorkCompletion(InternalConnection connection, WorkCompletion workCompletion) {
+    private void handleWorkCompletion(WorkCompletion workCompletion) {
 
-        // Get the associated subscriber
-        var identifier = workCompletion.getId();
-        var userContext = Identifier.getContext(identifier);
-        var handler = connection.getNetworkHandler();
+        // Get the connection owning the queue pair the request was posted on
+        var connection = getConnection(workCompletion.getQueuePairNumber());
+        if (connection == null) {
+            log.error("Received completion for unknown queue pair {}", workCompletion.getQueuePairNumber());
+            return;
+        }
 
-        // Handle work completion
-        var opCode = workCompletion.getOpCode();
-        switch (opCode) {
-            case SEND:
-                onSendCompletion(identifier);
-                break;
-            case RDMA_READ:
-                onReadCompletion(identifier);
-                break;
-            case RDMA_WRITE:
-                onWriteCompletion(identifier);
-                break;
-            case FETCH_ADD:
-                onFetchCompletion(identifier);
-                break;
-            case COMP_SWAP:
-                onSwapCompletion(identifier);
-                break;
+        // Requests are posted using their position within the queue pair as work request id
+        var position = workCompletion.getId();
+        var state = connection.getState();
+        if (!state.isPending(position)) {
+            log.warn("Received completion for request #{} of connection #{}, which is not pending", position, connection.getId());
+            return;
         }
 
         // Check work completion status
         var status = workCompletion.getStatus();
         if (status != WorkCompletion.Status.SUCCESS) {
-            log.error("Send work request #{} ({}) failed with status {}", userContext, workCompletion.getOpCode(), status);
-            handler.onRequestFailed(connection.getChannel(), userContext);
+            log.error("Send work request #{} ({}) of connection #{} failed with status {}", position, workCompletion.getOpCode(), connection.getId(), status);
+        }
+
+        // Retire the completed request and all unsignaled requests posted before it. Reliable connections acknowledge
+        // requests in order, so requests posted before a failed one were delivered and complete successfully. Requests
+        // posted after it are flushed by the queue pair and fail once their own error completions arrive.
+        while (state.isPending(position)) {
+            var identifier = state.poll();
+            if (status == WorkCompletion.Status.SUCCESS || state.isPending(position)) {
+                onRequestCompleted(connection, identifier);
+            } else {
+                pendingRequests--;
+                onRequestFailed(connection, identifier, true);
+            }
+        }
+    }
+
+    @Override
+    protected void onConnectionAdded(InternalConnection connection) {
+        if (connection.isPriority()) {
+            priorityConnections.add(connection);
+        }
+    }
+
+    @Override
+    protected void onConnectionRemoved(InternalConnection connection) {
+        priorityConnections.remove(connection);
+
+        // Fail all requests still pending within the queue pair, since
+        // their completions are discarded once the queue pair is destroyed
+        var state = connection.getState();
+        while (state.hasPending()) {
+            pendingRequests--;
+            onRequestFailed(connection, state.poll(), false);
+        }
+
+        // Fail all requests which were not posted yet
+        var requests = connection.getRequestBuffer();
+        int bytes;
+        while ((bytes = requests.read((type, buffer, index, length) -> failChain(connection, buffer.addressOffset() + index), Math.max(MAX_BATCH_SIZE, state.getSize()))) > 0) {
+            requests.commitRead(bytes);
+        }
+
+        // Drop requests held back by the agents and hand buffers of unread messages back to the handler
+        connection.getControlBacklog().discard(connection.getRendezvousTable(), connection::returnRendezvousTarget);
+
+        // Fail all messages held back for coalescing
+        var coalescer = connection.getCoalescer();
+        if (!coalescer.isEmpty()) {
+            onBatchFinished(connection, coalescer.identifier(), coalescer.count(), false);
+            coalescer.reset();
+        }
+
+        try {
+            connection.getQueuePair().close();
+        } catch (IOException e) {
+            log.error("Destroying queue pair of connection #{} failed", connection.getId(), e);
+        }
+
+        // This agent was the last one watching the descriptor used for signaling queued requests
+        try {
+            connection.getQueueFileDescriptor().close();
+        } catch (IOException e) {
+            log.error("Closing queue file descriptor of connection #{} failed", connection.getId(), e);
+        }
+
+        // The remote can no longer grant credits once the queue pair is destroyed
+        var creditBuffer = connection.getCreditBuffer();
+        if (creditBuffer != null) {
+            try {
+                creditBuffer.release();
+            } catch (Exception e) {
+                log.error("Releasing credit buffer of connection #{} failed", connection.getId(), e);
+            }
+        }
+    }
+
+    private void failChain(InternalConnection connection, long request) {
+
+        // Records may contain a chain of linked requests
+        while (request != 0) {
+            onRequestFailed(connection, SendRequestAccessor.getId(request), false);
+            request = SendRequestAccessor.getNext(request);
+        }
+    }
+
+    private void onRequestFailed(InternalConnection connection, long identifier, boolean connected) {
+
+        // Fail every message sent using a buffer of coalesced messages
+        if (BitMask.isSet(Identifier.getFlags(identifier), RequestFlag.BATCH)) {
+            onBatchFinished(connection, Identifier.getAttachement(identifier), Identifier.getContext(identifier), false);
+            return;
+        }
+
+        releaseResources(identifier);
+
+        // Only the last fragment of a message reports its outcome, since the
+        // remaining fragments are flushed and fail as well
+        var flags = Identifier.getFlags(identifier);
+        var context = Identifier.getContext(identifier);
+        if (BitMask.isSet(flags, RequestFlag.FRAGMENT)) {
+            return;
+        }
+
+        // A failed rendezvous announcement fails the user's send request, while
+        // failed acknowledgements can not be reported to anyone
+        if (BitMask.isSet(flags, RequestFlag.CONTROL)) {
+            if (Identifier.getAttachement(identifier) == ControlMessage.RENDEZVOUS_REQUEST) {
+                connection.getNetworkHandler().onRequestFailed(connection.getChannel(), context);
+            }
+
             return;
         }
 
-        handler.onRequestCompleted(connection.getChannel(), userContext);
+        // Tell the remote that we could not read its message
+        if (BitMask.isSet(flags, RequestFlag.RENDEZVOUS)) {
+            var rendezvous = connection.getRendezvousTable();
+            var transfer = rendezvous.get(Identifier.getAttachement(identifier));
+            var target = transfer.getTarget();
+            rendezvous.recycle(transfer);
+            connection.returnRendezvousTarget(target);
+            if (connected) {
+                connection.getControlBacklog().appendControl(connection.getRequestBuffer(), ControlMessage.RENDEZVOUS_FAILED, context);
+            }
+
+            return;
+        }
+
+        connection.getNetworkHandler().onRequestFailed(connection.getChannel(), context);
     }
 
-    private void onSendCompletion(long identifier) {
+    private void onRequestCompleted(InternalConnection connection, long identifier) {
 
-        // Extract flags from identifier
+        // The request no longer occupies a slot within the completion queue
+        pendingRequests--;
+
+        // Complete every message sent using a buffer of coalesced messages
+        if (BitMask.isSet(Identifier.getFlags(identifier), RequestFlag.BATCH)) {
+            onBatchFinished(connection, Identifier.getAttachement(identifier), Identifier.getContext(identifier), true);
+            return;
+        }
+
+        // Release resources held by the request
+        releaseResources(identifier);
+
+        // Control messages and all but the last fragment of a message are internal. A rendezvous
+        // announcement completes once the remote tells us that it read the announced message.
         var flags = Identifier.getFlags(identifier);
+        if (BitMask.isSet(flags, RequestFlag.CONTROL) || BitMask.isSet(flags, RequestFlag.FRAGMENT)) {
+            return;
+        }
 
-        // Direct send operations do not need special handling
-        if (BitMask.isSet(flags, RequestFlag.DIRECT)) {
+        if (BitMask.isSet(flags, RequestFlag.RENDEZVOUS)) {
+            onRendezvousCompleted(connection, identifier);
             return;
         }
 
-        // Release the used buffer using the buffer index encoded
-        // within the identifier's attachement
-        var attachement = Identifier.getAttachement(identifier);
-        bufferPool.release(attachement);
+        // Notify the handler using the context encoded within the identifier
+        connection.getNetworkHandler().onRequestCompleted(connection.getChannel(), Identifier.getContext(identifier));
     }
 
-    private void onReadCompletion(long identifier) {
-        // Nothing to do
+    private void onRendezvousCompleted(InternalConnection connection, long identifier) {
+
+        // Look up the transfer using the slot encoded within the identifier's attachement
+        var rendezvous = connection.getRendezvousTable();
+        var transfer = rendezvous.get(Identifier.getAttachement(identifier));
+
+        // Tell the remote that it may reuse its buffer, using the token it sent us
+        connection.getControlBacklog().appendControl(connection.getRequestBuffer(), ControlMessage.RENDEZVOUS_COMPLETE, Identifier.getContext(identifier));
+
+        // The receive agent passes the message to the network handler, which receives all messages on its thread
+        rendezvous.finish(transfer);
+        connection.getReceiveAgent().onRendezvousFinished(connection);
     }
 
-    private void onWriteCompletion(long identifier) {
-        // Nothing to do
+    private void onBatchFinished(InternalConnection connection, int bufferIdentifier, int count, boolean success) {
+
+        // Notify the handler using the identifiers stored at the end of the pooled buffer
+        var buffer = bufferPool.get(bufferIdentifier);
+        var handler = connection.getNetworkHandler();
+        for (int i = 0; i < count; i++) {
+            var id = Coalescer.getId(buffer, i);
+            if (success) {
+                handler.onRequestCompleted(connection.getChannel(), id);
+            } else {
+                handler.onRequestFailed(connection.getChannel(), id);
+            }
+        }
+
+        // The buffer may only be reused after all identifiers were read
+        bufferPool.release(bufferIdentifier);
     }
 
-    private void onFetchCompletion(long identifier) {
-        // Nothing to do
+    private void releaseResources(long identifier) {
+
+        // Extract flags from identifier
+        var flags = Identifier.getFlags(identifier);
+
+        // Only requests using a pooled buffer need special handling
+        if (!BitMask.isSet(flags, RequestFlag.POOLED)) {
+            return;
+        }
+
+        // Release the used buffer using the buffer index encoded
+        // within the identifier's attachement
+        var attachement = Identifier.getAttachement(identifier);
+        bufferPool.release(attachement);
     }
 
-    private void onSwapCompletion(long identifier) {
-        // Nothing to do
+    /**
+     * Whether the connection's request buffer is at most half full and pooled buffers are available.
+     */
+    private boolean isWritable(InternalConnection connection) {
+        var requests = connection.getRequestBuffer();
+        return requests.size() <= requests.capacity() / 2 && !bufferPool.isDepleted();
     }
 
     public BufferPool.PooledBuffer claim() {
@@ -257,6 +506,14 @@ public class SendAgent extends EpollAgent {
         return buffer;
     }
 
+    public @Nullable BufferPool.PooledBuffer tryClaim() {
+        return bufferPool.tryClaim();
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     @Override
     public void onStart() {
         super.onStart();
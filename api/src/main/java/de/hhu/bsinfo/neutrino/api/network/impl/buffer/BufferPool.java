@@ -14,8 +14,12 @@ import org.agrona.concurrent.ManyToManyConcurrentArrayQueue;
 import org.agrona.concurrent.QueuedPipe;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.agrona.hints.ThreadHints;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 
 @Slf4j
@@ -42,17 +46,50 @@ public final class BufferPool {
     private final PooledBuffer[] indexedBuffers;
 
     /**
-     * Pooled buffers.
+     * Pooled buffers. If sharding is enabled, this queue acts as the depot shards are refilled from.
      */
     private final QueuedPipe<PooledBuffer> buffers;
 
+    /**
+     * The maximum number of buffers a single shard caches. Sharding is disabled if this value is zero.
+     */
+    private final int shardCapacity;
+
+    /**
+     * Per-thread shards caching buffers claimed from the depot.
+     */
+    private final ThreadLocal<Shard> shards;
+
+    /**
+     * All shards which may still hold buffers, so that threads running out of buffers can steal from them.
+     */
+    private final List<Shard> activeShards = new CopyOnWriteArrayList<>();
+
     public BufferPool(final BufferRegistrator registrator, final int count, final int size) throws IOException {
+        this(registrator, count, size, 0);
+    }
+
+    public BufferPool(final BufferRegistrator registrator, final int count, final int size, final int shardCapacity) throws IOException {
+        this(registrator, count, size, shardCapacity, MemoryAlignment.PAGE);
+    }
+
+    /**
+     * Creates a new buffer pool, whose memory is allocated using the specified alignment. Using
+     * {@link MemoryAlignment#HUGE_PAGE} backs the pool with huge pages.
+     */
+    public BufferPool(final BufferRegistrator registrator, final int count, final int size, final int shardCapacity, final MemoryAlignment alignment) throws IOException {
+        if (shardCapacity < 0) {
+            throw new IllegalArgumentException("shard capacity must not be negative");
+        }
+
         indexedBuffers = new PooledBuffer[count];
         buffers = new ManyToManyConcurrentArrayQueue<>(count);
+        this.shardCapacity = shardCapacity;
+        shards = shardCapacity == 0 ? null : ThreadLocal.withInitial(this::createShard);
 
         // Create base buffer containing enough space for pooled buffers
         // and register it with the InfiniBand hardware
-        baseBuffer = MemoryUtil.allocateAligned(count * size, MemoryAlignment.PAGE);
+        baseBuffer = MemoryUtil.allocateAligned(count * size, alignment);
         baseRegion = registrator.wrap(baseBuffer.addressOffset(), baseBuffer.capacity(), MemoryRegion.DEFAULT_ACCESS_FLAGS);
 
         var baseAddress = baseBuffer.addressOffset();
@@ -72,6 +109,78 @@ public final class BufferPool {
 
     public PooledBuffer claim() {
 
+        // Claim from the shared queue if sharding is disabled
+        if (shards == null) {
+            return claimShared();
+        }
+
+        // Claim from the calling thread's shard
+        return shards.get().claim();
+    }
+
+    /**
+     * Claims a buffer without waiting and returns null if none is available.
+     */
+    public @Nullable PooledBuffer tryClaim() {
+
+        // Claim from the shared queue if sharding is disabled
+        if (shards == null) {
+            return buffers.poll();
+        }
+
+        // Claim from the calling thread's shard
+        return shards.get().tryClaim();
+    }
+
+    public void release(int identifier) {
+
+        // Get buffer by identifier
+        var buffer = indexedBuffers[identifier];
+
+        // Return the buffer to the shard it was claimed from
+        var owner = buffer.owner;
+        if (owner != null) {
+            owner.release(buffer);
+            return;
+        }
+
+        // Put buffer back into queue
+        releaseShared(buffer);
+    }
+
+    private Shard createShard() {
+        var shard = new Shard(Thread.currentThread());
+        activeShards.add(shard);
+        return shard;
+    }
+
+    /**
+     * Takes a buffer cached within another shard. Shards whose thread terminated are retired on the way,
+     * which returns their buffers to the depot.
+     */
+    private @Nullable PooledBuffer steal(Shard thief) {
+        for (var shard : activeShards) {
+            if (shard == thief) {
+                continue;
+            }
+
+            if (!shard.thread.isAlive()) {
+                shard.retire();
+                continue;
+            }
+
+            var buffer = shard.magazine.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+
+        // Retired shards may have refilled the depot
+        return buffers.poll();
+    }
+
+    private PooledBuffer claimShared() {
+
         // Create variable for spin-wait loop
         PooledBuffer tmp;
 
@@ -84,10 +193,7 @@ public final class BufferPool {
         return tmp;
     }
 
-    public void release(int identifier) {
-
-        // Get buffer by identifier
-        var buffer = indexedBuffers[identifier];
+    private void releaseShared(PooledBuffer buffer) {
 
         // Clear buffer for next usage
         //        buffer.clear();
@@ -98,6 +204,32 @@ public final class BufferPool {
         }
     }
 
+    /**
+     * Whether no buffer can be claimed without waiting. Buffers cached within shards count as available,
+     * since threads whose magazine and the depot ran empty steal from other shards.
+     */
+    public boolean isDepleted() {
+        if (!buffers.isEmpty()) {
+            return false;
+        }
+
+        for (var shard : activeShards) {
+            if (!shard.magazine.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether the buffer was created by this pool.
+     */
+    public boolean owns(PooledBuffer buffer) {
+        var identifier = buffer.getIdentifier();
+        return identifier >= 0 && identifier < indexedBuffers.length && indexedBuffers[identifier] == buffer;
+    }
+
     public PooledBuffer get(int identifier) {
         return indexedBuffers[identifier];
     }
@@ -106,8 +238,113 @@ public final class BufferPool {
     public String toString() {
         var first = indexedBuffers[0];
         var last = indexedBuffers[indexedBuffers.length - 1];
-        return String.format("BufferPool { region: [ 0x%08X , 0x%08X ] }",
-                first.addressOffset(), last.addressOffset()+ last.capacity());
+        return String.format("BufferPool { region: [ 0x%08X , 0x%08X ], shardCapacity: %d }",
+                first.addressOffset(), last.addressOffset()+ last.capacity(), shardCapacity);
+    }
+
+    /**
+     * A magazine of buffers cached for a single claiming thread. Claims are served from the magazine and
+     * only touch the shared depot once it runs empty. Released buffers are handed back to the magazine of
+     * the shard they were claimed from. Threads which can neither refill their magazine from the depot nor
+     * from their own released buffers steal from other shards, so that buffers cached by idle threads are
+     * never lost. Shards of terminated threads are retired, which returns their buffers to the depot.
+     */
+    private final class Shard {
+
+        /**
+         * The thread this shard caches buffers for.
+         */
+        private final Thread thread;
+
+        /**
+         * Buffers available to the owning thread. Other threads only access it for returning or stealing buffers.
+         */
+        private final QueuedPipe<PooledBuffer> magazine = new ManyToManyConcurrentArrayQueue<>(Math.max(2, shardCapacity));
+
+        /**
+         * Method reference for pushing buffers into the magazine.
+         */
+        private final Consumer<PooledBuffer> pusher = this::push;
+
+        /**
+         * Whether this shard was retired after its thread terminated.
+         */
+        private volatile boolean retired;
+
+        private Shard(Thread thread) {
+            this.thread = thread;
+        }
+
+        private PooledBuffer claim() {
+
+            // Wait until a buffer is released, if all buffers are in use
+            PooledBuffer buffer;
+            while ((buffer = tryClaim()) == null) {
+                ThreadHints.onSpinWait();
+            }
+
+            return buffer;
+        }
+
+        private @Nullable PooledBuffer tryClaim() {
+
+            // Fetch half a magazine from the depot if it ran empty, so that the shard has room left for released buffers
+            var buffer = magazine.poll();
+            if (buffer == null) {
+                buffers.drain(pusher, Math.max(1, shardCapacity >> 1));
+                buffer = magazine.poll();
+            }
+
+            // Take buffers cached by other threads if the depot ran empty as well
+            if (buffer == null) {
+                buffer = steal(this);
+            }
+
+            // Take ownership of the buffer
+            if (buffer != null) {
+                buffer.owner = this;
+            }
+
+            return buffer;
+        }
+
+        private void push(PooledBuffer buffer) {
+
+            // Hand the buffer back to the depot if our magazine is full
+            if (!magazine.offer(buffer)) {
+                buffer.owner = null;
+                releaseShared(buffer);
+            }
+        }
+
+        private void release(PooledBuffer buffer) {
+
+            // Fall back to the depot if the magazine is full or the owning thread terminated
+            if (retired || !magazine.offer(buffer)) {
+                buffer.owner = null;
+                releaseShared(buffer);
+                return;
+            }
+
+            // The shard may have been retired concurrently, in which case the buffer must not remain within it
+            if (retired) {
+                flush();
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            activeShards.remove(this);
+            flush();
+        }
+
+        private void flush() {
+            PooledBuffer buffer;
+            while ((buffer = magazine.poll()) != null) {
+                buffer.owner = null;
+                releaseShared(buffer);
+            }
+        }
     }
 
     public static final class PooledBuffer extends UnsafeRegisteredBuffer {
@@ -137,6 +374,11 @@ public final class BufferPool {
          */
         private final ScatterGatherElement element;
 
+        /**
+         * The shard this buffer was claimed from or null if it was claimed from the shared queue.
+         */
+        private Shard owner;
+
         public PooledBuffer(int identifier, DirectBuffer buffer, MemoryRegion memoryRegion, IntConsumer releaser) {
             super(buffer, memoryRegion);
             this.identifier = identifier;
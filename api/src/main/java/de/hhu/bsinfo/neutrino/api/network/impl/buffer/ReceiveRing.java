@@ -1,5 +1,6 @@
 package de.hhu.bsinfo.neutrino.api.network.impl.buffer;
 
+import de.hhu.bsinfo.neutrino.api.network.ReceiveBuffer;
 import de.hhu.bsinfo.neutrino.api.network.impl.accessor.ReceiveRequestAccessor;
 import de.hhu.bsinfo.neutrino.api.network.impl.accessor.ScatterGatherAccessor;
 import de.hhu.bsinfo.neutrino.api.util.BufferRegistrator;
@@ -13,17 +14,18 @@ import org.agrona.BitUtil;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.hints.ThreadHints;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
+import java.util.function.Consumer;
 
 @Slf4j
 @NotThreadSafe
 public final class ReceiveRing {
 
-    private static final int RECEIVE_BUFFER_SIZE = MemoryAlignment.PAGE.value();
-
     private static final int ENTRY_SIZE = BitUtil.findNextPositivePowerOfTwo(
             ReceiveRequestAccessor.ELEMENT_SIZE + ScatterGatherAccessor.ELEMENT_SIZE);
 
@@ -46,6 +48,26 @@ public final class ReceiveRing {
      */
     private final DirectBuffer[] indexedBuffers;
 
+    /**
+     * Reference-counted views of each receive buffer.
+     */
+    private final ReceiveBuffer[] messages;
+
+    /**
+     * Receive buffers released by their consumers, which are ready to be posted again.
+     */
+    private final ManyToOneConcurrentArrayQueue<ReceiveBuffer> released;
+
+    /**
+     * Whether the consumer waits for buffers to be released.
+     */
+    private volatile boolean starving;
+
+    /**
+     * Called once a buffer is released while the consumer is starving.
+     */
+    private Runnable starvationHandler = () -> {};
+
     /**
      * Helper object used for posting to the shared receive queue.
      */
@@ -58,6 +80,11 @@ public final class ReceiveRing {
      */
     private final long requestAddress;
 
+    /**
+     * The size of each receive buffer.
+     */
+    private final int bufferSize;
+
     /**
      * Mask used to keep offset within memory bounds
      */
@@ -69,16 +96,41 @@ public final class ReceiveRing {
     private int currentOffset;
 
     public ReceiveRing(int entries, BufferRegistrator registrator) throws IOException {
+        this(entries, MemoryAlignment.PAGE.value(), registrator);
+    }
+
+    public ReceiveRing(int entries, int bufferSize, BufferRegistrator registrator) throws IOException {
+        this(entries, bufferSize, false, registrator);
+    }
+
+    /**
+     * Creates a new receive ring. In deferred mode, receive buffers are only posted after they
+     * have been released using {@link #postReleased(SharedReceiveQueue, int)}, so that consumers
+     * can retain received messages. Otherwise, buffers are posted in ring order using
+     * {@link #post(SharedReceiveQueue, int)} and must be consumed immediately.
+     */
+    public ReceiveRing(int entries, int bufferSize, boolean deferred, BufferRegistrator registrator) throws IOException {
+        this(entries, bufferSize, deferred, MemoryAlignment.PAGE, registrator);
+    }
+
+    /**
+     * Creates a new receive ring, whose receive buffers are allocated using the specified alignment.
+     * Using {@link MemoryAlignment#HUGE_PAGE} backs the receive buffers with huge pages.
+     */
+    public ReceiveRing(int entries, int bufferSize, boolean deferred, MemoryAlignment alignment, BufferRegistrator registrator) throws IOException {
 
         // Use a power of two so that we can use a mask for wrapping around
         var capacity = BitUtil.findNextPositivePowerOfTwo(entries);
+        this.bufferSize = bufferSize;
 
         // Create request and data buffers
-        var buffer = MemoryUtil.allocateAligned(capacity * RECEIVE_BUFFER_SIZE, MemoryAlignment.PAGE);
+        var buffer = MemoryUtil.allocateAligned(capacity * bufferSize, alignment);
         var region = registrator.wrap(buffer.addressOffset(), buffer.capacity(), MemoryRegion.DEFAULT_ACCESS_FLAGS);
         data = new UnsafeRegisteredBuffer(buffer, region);
         requests = MemoryUtil.allocateAligned(capacity * ENTRY_SIZE, MemoryAlignment.PAGE);
         indexedBuffers = new DirectBuffer[capacity];
+        messages = new ReceiveBuffer[capacity];
+        released = new ManyToOneConcurrentArrayQueue<>(capacity);
         offsetMask = requests.capacity() - 1;
 
         // Fill n-1 requests and link them
@@ -99,12 +151,12 @@ public final class ReceiveRing {
             ReceiveRequestAccessor.setListLength(requestHandle, LIST_LENGTH);
 
             // Fill in scatter-gather element data
-            ScatterGatherAccessor.setAddress(elementHandle, dataOffset + (long) i * RECEIVE_BUFFER_SIZE);
-            ScatterGatherAccessor.setLength(elementHandle, RECEIVE_BUFFER_SIZE);
+            ScatterGatherAccessor.setAddress(elementHandle, dataOffset + (long) i * bufferSize);
+            ScatterGatherAccessor.setLength(elementHandle, bufferSize);
             ScatterGatherAccessor.setLocalKey(elementHandle, data.localKey());
 
             // Create sliced buffer for consumer
-            indexedBuffers[i] = new UnsafeBuffer(dataOffset + (long) i * RECEIVE_BUFFER_SIZE, RECEIVE_BUFFER_SIZE);
+            indexedBuffers[i] = new UnsafeBuffer(dataOffset + (long) i * bufferSize, bufferSize);
         }
 
         // Fill last request and create link it with the first one
@@ -119,13 +171,22 @@ public final class ReceiveRing {
         ReceiveRequestAccessor.setListLength(requestHandle, LIST_LENGTH);
 
         // Fill in scatter-gather element data
-        ScatterGatherAccessor.setAddress(elementHandle, dataOffset + (long) i * RECEIVE_BUFFER_SIZE);
-        ScatterGatherAccessor.setLength(elementHandle, RECEIVE_BUFFER_SIZE);
+        ScatterGatherAccessor.setAddress(elementHandle, dataOffset + (long) i * bufferSize);
+        ScatterGatherAccessor.setLength(elementHandle, bufferSize);
         ScatterGatherAccessor.setLocalKey(elementHandle, data.localKey());
 
         // Create sliced buffer for consumer
-        indexedBuffers[i] = new UnsafeBuffer(dataOffset + (long) i * RECEIVE_BUFFER_SIZE, RECEIVE_BUFFER_SIZE);
+        indexedBuffers[i] = new UnsafeBuffer(dataOffset + (long) i * bufferSize, bufferSize);
         currentOffset = 0;
+
+        // Create reference-counted views, which are initially available for posting in deferred mode
+        Consumer<ReceiveBuffer> releaser = this::onReleased;
+        for (int j = 0; j < capacity; j++) {
+            messages[j] = new ReceiveBuffer(j, indexedBuffers[j], releaser);
+            if (deferred) {
+                released.offer(messages[j]);
+            }
+        }
     }
 
     public void post(SharedReceiveQueue sharedReceiveQueue, int count) throws IOException {
@@ -162,14 +223,82 @@ public final class ReceiveRing {
         currentOffset = (endOffset + ENTRY_SIZE) & offsetMask;
     }
 
+    /**
+     * Posts up to limit released receive buffers and returns the number of buffers posted.
+     */
+    public int postReleased(SharedReceiveQueue sharedReceiveQueue, int limit) throws IOException {
+
+        // Link released receive work requests in the order they were released
+        long first = NULL;
+        long last = NULL;
+        int count = 0;
+        ReceiveBuffer message;
+        while (count < limit && (message = released.poll()) != null) {
+            var requestHandle = address(message.index() * ENTRY_SIZE);
+            if (first == NULL) {
+                first = requestHandle;
+            } else {
+                ReceiveRequestAccessor.setNext(last, requestHandle);
+            }
+
+            last = requestHandle;
+            count++;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        // Terminate the list and post all linked receive work requests at once
+        ReceiveRequestAccessor.setNext(last, NULL);
+        sharedReceiveQueue.postReceive(workRequest.wrap(first));
+
+        return count;
+    }
+
+    /**
+     * Returns the reference-counted view of the specified receive buffer prepared for a new message.
+     */
+    public ReceiveBuffer acquire(int index, int length) {
+        return messages[index].reset(length);
+    }
+
+    /**
+     * Sets the function called when a buffer is released while the consumer is starving.
+     */
+    public void onStarvation(Runnable handler) {
+        starvationHandler = handler;
+    }
+
+    /**
+     * Requests a notification on the next release and returns true if released buffers
+     * are already available, in which case the consumer should post them right away.
+     */
+    public boolean awaitRelease() {
+        starving = true;
+        return !released.isEmpty();
+    }
+
+    private void onReleased(ReceiveBuffer message) {
+        while (!released.offer(message)) {
+            ThreadHints.onSpinWait();
+        }
+
+        // Notify the consumer if it ran out of buffers to post
+        if (starving) {
+            starving = false;
+            starvationHandler.run();
+        }
+    }
+
     public DirectBuffer get(int index) {
         return indexedBuffers[index];
     }
 
     @Override
     public String toString() {
-        return String.format("ReceiveRing { region: [ 0x%08X , 0x%08X ] }",
-                data.addressOffset(), data.addressOffset() + data.capacity());
+        return String.format("ReceiveRing { bufferSize: %d, region: [ 0x%08X , 0x%08X ] }",
+                bufferSize, data.addressOffset(), data.addressOffset() + data.capacity());
     }
 
     private long address(int offset) {
@@ -5,6 +5,7 @@ import de.hhu.bsinfo.neutrino.api.network.impl.accessor.SendRequestAccessor;
 import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
 import de.hhu.bsinfo.neutrino.util.MemoryUtil;
 import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.UnsafeAccess;
 import org.agrona.concurrent.AtomicBuffer;
 import org.agrona.concurrent.MessageHandler;
@@ -21,8 +22,16 @@ import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.*;
  */
 public class RequestBuffer {
 
+    /**
+     * Records store the number of work requests they contain as their message type.
+     */
     private static final int REQUEST_MESSAGE_ID = 1;
 
+    /**
+     * The size of a single request within a chain.
+     */
+    public static final int CHAIN_ELEMENT_SIZE = SendRequestAccessor.ELEMENT_SIZE + ScatterGatherAccessor.ELEMENT_SIZE;
+
     /**
      * This buffer's maximum capacity in bytes.
      */
@@ -71,9 +80,35 @@ public class RequestBuffer {
         tailPositionIndex = capacity + TAIL_POSITION_OFFSET;
     }
 
+    /**
+     * Handles a request record and decides whether it was consumed.
+     */
+    @FunctionalInterface
+    public interface RequestHandler {
+
+        /**
+         * Processes the record and returns false if it should remain within the buffer, which also stops the current read.
+         */
+        boolean onRequest(int requests, MutableDirectBuffer buffer, int index, int length);
+    }
+
+    /**
+     * Passes committed records to the handler until the number of work requests they contain would exceed the limit.
+     */
     public int read(final MessageHandler handler, final int limit) {
+        return process((requests, buffer, index, length) -> {
+            handler.onMessage(requests, buffer, index, length);
+            return true;
+        }, limit);
+    }
 
-        // Keep track of the messages we already read
+    /**
+     * Passes committed records to the handler until the number of work requests they contain
+     * would exceed the limit or the handler leaves a record within the buffer.
+     */
+    public int process(final RequestHandler handler, final int limit) {
+
+        // Keep track of the work requests we already read
         var messagesRead = 0;
 
         // Retrieve our current position within the buffer
@@ -95,17 +130,26 @@ public class RequestBuffer {
                 break;
             }
 
-            // Increment the number of bytes processed
-            bytesRead += align(recordLength, ALIGNMENT);
-
             // Skip this record if it represents padding
             final var messageTypeId = buffer.getInt(typeOffset(recordIndex));
             if (messageTypeId == PADDING_MSG_TYPE_ID) {
+                bytesRead += align(recordLength, ALIGNMENT);
                 continue;
             }
 
-            handler.onMessage(messageTypeId, buffer, recordIndex + HEADER_LENGTH, recordLength - HEADER_LENGTH);
-            messagesRead++;
+            // Chains are never split, so we have to stop if the record contains too many work requests
+            if (messagesRead + messageTypeId > limit) {
+                break;
+            }
+
+            // The handler may leave the record within the buffer (e.g. if the remote can not receive it yet)
+            if (!handler.onRequest(messageTypeId, buffer, recordIndex + HEADER_LENGTH, recordLength - HEADER_LENGTH)) {
+                break;
+            }
+
+            // Increment the number of bytes processed
+            bytesRead += align(recordLength, ALIGNMENT);
+            messagesRead += messageTypeId;
         }
 
         // Return the number of bytes read so the consumer can commit it later
@@ -123,14 +167,41 @@ public class RequestBuffer {
     }
 
     public int tryClaim(final int scatterGatherElements) {
+        return tryClaim(scatterGatherElements, 0);
+    }
 
-        final var buffer = this.buffer;
+    /**
+     * Claims space for a request followed by the specified number of scatter-gather elements
+     * and an additional payload, which is stored directly behind the last scatter-gather element.
+     */
+    public int tryClaim(final int scatterGatherElements, final int payloadLength) {
 
         // Calculate the required size in bytes
         final var recordLength = SendRequestAccessor.ELEMENT_SIZE +
                 ScatterGatherAccessor.ELEMENT_SIZE * scatterGatherElements +
+                payloadLength +
                 HEADER_LENGTH;
 
+        return claimRecord(recordLength, REQUEST_MESSAGE_ID);
+    }
+
+    /**
+     * Claims space for a chain of requests, each followed by a single scatter-gather element. The chain
+     * is stored within one record, so that it is always posted as a whole and never interleaved with
+     * requests appended by other threads. Producers are responsible for linking the chain's requests.
+     */
+    public int tryClaimChain(final int requests) {
+
+        // Calculate the required size in bytes
+        final var recordLength = CHAIN_ELEMENT_SIZE * requests + HEADER_LENGTH;
+
+        return claimRecord(recordLength, requests);
+    }
+
+    private int claimRecord(final int recordLength, final int requests) {
+
+        final var buffer = this.buffer;
+
         // Claim the required space
         final var recordIndex = claim(buffer, recordLength);
 
@@ -142,7 +213,7 @@ public class RequestBuffer {
         // Block claimed space
         buffer.putIntOrdered(lengthOffset(recordIndex), -recordLength);
         UnsafeAccess.UNSAFE.storeFence();
-        buffer.putInt(typeOffset(recordIndex), REQUEST_MESSAGE_ID);
+        buffer.putInt(typeOffset(recordIndex), requests);
 
         // Return the index at which the producer may write its request
         return encodedMsgOffset(recordIndex);
@@ -160,6 +231,22 @@ public class RequestBuffer {
         buffer.putIntOrdered(lengthOffset(recordIndex), -recordLength);
     }
 
+    /**
+     * Turns a claimed record into padding, which the consumer skips.
+     */
+    public void abort(final int index) {
+
+        final var buffer = this.buffer;
+
+        // Calculate the request index and length
+        final int recordIndex = index - HEADER_LENGTH;
+        final int recordLength = buffer.getInt(lengthOffset(recordIndex));
+
+        // Mark the record as padding and commit it
+        buffer.putInt(typeOffset(recordIndex), PADDING_MSG_TYPE_ID);
+        buffer.putIntOrdered(lengthOffset(recordIndex), -recordLength);
+    }
+
     private int claim(final AtomicBuffer buffer, final int length) {
 
         // Calculate the required space to claim
@@ -262,6 +349,10 @@ public class RequestBuffer {
         return (int) (tail - headAfter);
     }
 
+    public int capacity() {
+        return capacity;
+    }
+
     public long memoryAddress() {
         return buffer.addressOffset();
     }
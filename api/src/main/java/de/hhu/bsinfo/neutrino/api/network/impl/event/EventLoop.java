@@ -1,5 +1,6 @@
 package de.hhu.bsinfo.neutrino.api.network.impl.event;
 
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.CloseHelper;
 import org.agrona.concurrent.Agent;
@@ -7,6 +8,9 @@ import org.agrona.concurrent.AgentRunner;
 import org.agrona.concurrent.DynamicCompositeAgent;
 import org.agrona.concurrent.IdleStrategy;
 import org.agrona.hints.ThreadHints;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
 
 @Slf4j
 public final class EventLoop<T extends Agent> implements AutoCloseable {
@@ -29,9 +33,29 @@ public final class EventLoop<T extends Agent> implements AutoCloseable {
     private T agent;
 
     public EventLoop(String name, IdleStrategy idleStrategy) {
+        this(name, idleStrategy, null);
+    }
+
+    /**
+     * Creates an event loop whose thread only runs on the specified CPUs.
+     */
+    public EventLoop(String name, IdleStrategy idleStrategy, @Nullable BitSet affinity) {
         compositeAgent = new DynamicCompositeAgent(name);
         runner = new AgentRunner(idleStrategy, EventLoop::errorHandler, null, compositeAgent);
-        thread = AgentRunner.startOnThread(runner);
+        thread = affinity == null || affinity.isEmpty()
+                ? AgentRunner.startOnThread(runner)
+                : AgentRunner.startOnThread(runner, task -> new Thread(() -> {
+
+                    // Pin the thread before it starts working, so that it never runs on other CPUs
+                    try {
+                        NumaUtil.setAffinity(affinity);
+                        log.debug("Pinned event loop {} to CPUs {}", name, affinity);
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Pinning event loop {} to CPUs {} failed", name, affinity, e);
+                    }
+
+                    task.run();
+                }));
     }
 
     public void add(T agent) {
@@ -7,7 +7,10 @@ import org.agrona.concurrent.DynamicCompositeAgent;
 import org.agrona.concurrent.IdleStrategy;
 import org.agrona.hints.ThreadHints;
 
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 @Slf4j
@@ -32,12 +35,19 @@ public class EventLoopGroup<T extends Agent> implements AutoCloseable {
         this(name, RUNTIME.availableProcessors(), idleStrategySupplier);
     }
 
-    @SuppressWarnings("unchecked")
     public EventLoopGroup(String name, int workerCount, Supplier<IdleStrategy> idleStrategySupplier) {
+        this(name, workerCount, idleStrategySupplier, index -> null);
+    }
+
+    /**
+     * Creates an event loop group whose threads only run on the CPUs returned for each event loop's index.
+     */
+    @SuppressWarnings("unchecked")
+    public EventLoopGroup(String name, int workerCount, Supplier<IdleStrategy> idleStrategySupplier, IntFunction<BitSet> affinity) {
         log.debug("Using {} worker threads with idle strategy {}", workerCount, idleStrategySupplier.get());
         eventLoops = new EventLoop[workerCount];
         for (int i = 0; i < workerCount; i++) {
-            eventLoops[i] = new EventLoop<>(name + "-" + i, idleStrategySupplier.get());
+            eventLoops[i] = new EventLoop<>(name + "-" + i, idleStrategySupplier.get(), affinity.apply(i));
         }
     }
 
@@ -45,6 +55,23 @@ public class EventLoopGroup<T extends Agent> implements AutoCloseable {
         return eventLoops[Math.floorMod(index.getAndIncrement(), eventLoops.length)];
     }
 
+    /**
+     * Returns the event loop whose agent comes first in the specified order. Event loops
+     * whose agents are equal are returned in turn, like they are returned by {@link #next()}.
+     */
+    public EventLoop<T> next(Comparator<? super T> order) {
+        var start = index.getAndIncrement();
+        var selected = eventLoops[Math.floorMod(start, eventLoops.length)];
+        for (int i = 1; i < eventLoops.length; i++) {
+            var candidate = eventLoops[Math.floorMod(start + i, eventLoops.length)];
+            if (order.compare(candidate.getAgent(), selected.getAgent()) < 0) {
+                selected = candidate;
+            }
+        }
+
+        return selected;
+    }
+
     public int size() {
         return eventLoops.length;
     }
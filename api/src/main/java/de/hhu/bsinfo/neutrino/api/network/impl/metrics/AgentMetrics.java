@@ -0,0 +1,46 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.metrics;
+
+import de.hhu.bsinfo.neutrino.api.network.impl.agent.EpollAgent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.TimeUnit;
+
+@Accessors(fluent = true)
+public @Data class AgentMetrics {
+
+    private final FunctionCounter pollingTime;
+
+    private final FunctionCounter waitingTime;
+
+    private final Gauge workRate;
+
+    public AgentMetrics(MeterRegistry meterRegistry, EpollAgent agent, int workerIndex) {
+        var prefix = "network." + agent.roleName() + ".agent";
+
+        pollingTime = FunctionCounter.builder(prefix + ".time", agent, it -> toSeconds(it.getPollingTime()))
+                .description("The time spent busy polling")
+                .baseUnit("seconds")
+                .tags("worker", String.valueOf(workerIndex), "state", "polling")
+                .register(meterRegistry);
+
+        waitingTime = FunctionCounter.builder(prefix + ".time", agent, it -> toSeconds(it.getWaitingTime()))
+                .description("The time spent waiting for events using epoll")
+                .baseUnit("seconds")
+                .tags("worker", String.valueOf(workerIndex), "state", "waiting")
+                .register(meterRegistry);
+
+        workRate = Gauge.builder(prefix + ".load", agent, EpollAgent::getWorkRate)
+                .description("The number of work items processed per second")
+                .baseUnit("items")
+                .tag("worker", String.valueOf(workerIndex))
+                .register(meterRegistry);
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
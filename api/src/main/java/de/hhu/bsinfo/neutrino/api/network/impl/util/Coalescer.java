@@ -0,0 +1,130 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.UnsafeAccess;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Packs small messages into a single buffer, which is sent using one work request. Each message
+ * is prefixed with its length. The request identifiers of all packed messages are stored at the
+ * end of the buffer, which is never transferred, so that each of them can be completed later.
+ *
+ *    0        2                 2 + n                                capacity
+ *    +--------+-----------------+--------+-----     -----+-----+-----+
+ *    | LENGTH |     MESSAGE     | LENGTH |  ...     ...   | ID1 | ID0 |
+ *    +--------+-----------------+--------+-----     -----+-----+-----+
+ */
+@NotThreadSafe
+public final class Coalescer {
+
+    /**
+     * The size of the length prefix preceding each message.
+     */
+    public static final int FRAME_HEADER_SIZE = Short.BYTES;
+
+    /**
+     * The maximum number of bytes transferred using a single work request.
+     */
+    private final int limit;
+
+    /**
+     * The buffer messages are packed into.
+     */
+    private MutableDirectBuffer buffer;
+
+    /**
+     * The buffer's identifier within its pool.
+     */
+    private int identifier;
+
+    /**
+     * The number of bytes packed so far.
+     */
+    private int length;
+
+    /**
+     * The number of messages packed so far.
+     */
+    private int count;
+
+    /**
+     * The point in time (in nanoseconds) at which packed messages must be sent.
+     */
+    private long deadline;
+
+    public Coalescer(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Starts packing messages into the specified buffer.
+     */
+    public void start(MutableDirectBuffer buffer, int identifier, long deadline) {
+        this.buffer = buffer;
+        this.identifier = identifier;
+        this.deadline = deadline;
+        length = 0;
+        count = 0;
+    }
+
+    /**
+     * Whether a message of the specified length fits into the current buffer.
+     */
+    public boolean fits(int messageLength) {
+        var required = length + FRAME_HEADER_SIZE + messageLength;
+        return required <= limit && required + (count + 1) * Integer.BYTES <= buffer.capacity();
+    }
+
+    /**
+     * Appends a message located at the specified virtual memory address.
+     */
+    public void append(long address, int messageLength, int id) {
+        buffer.putShort(length, (short) messageLength);
+        UnsafeAccess.UNSAFE.copyMemory(null, address, buffer.byteArray(), buffer.addressOffset() + length + FRAME_HEADER_SIZE, messageLength);
+        buffer.putInt(buffer.capacity() - (count + 1) * Integer.BYTES, id);
+        length += FRAME_HEADER_SIZE + messageLength;
+        count++;
+    }
+
+    /**
+     * Detaches the current buffer, so that a new one can be started.
+     */
+    public void reset() {
+        buffer = null;
+        length = 0;
+        count = 0;
+    }
+
+    public boolean isEmpty() {
+        return buffer == null;
+    }
+
+    public int identifier() {
+        return identifier;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    public DirectBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the request identifier of the n-th message packed into the buffer.
+     */
+    public static int getId(DirectBuffer buffer, int index) {
+        return buffer.getInt(buffer.capacity() - (index + 1) * Integer.BYTES);
+    }
+}
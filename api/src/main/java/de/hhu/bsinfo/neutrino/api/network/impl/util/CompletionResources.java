@@ -0,0 +1,36 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import de.hhu.bsinfo.neutrino.api.device.InfinibandDevice;
+import de.hhu.bsinfo.neutrino.util.FileDescriptor;
+import de.hhu.bsinfo.neutrino.verbs.CompletionChannel;
+import de.hhu.bsinfo.neutrino.verbs.CompletionQueue;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+@Slf4j
+public @Data class CompletionResources {
+
+    private final CompletionQueue completionQueue;
+
+    private final CompletionChannel completionChannel;
+
+    private final FileDescriptor fileDescriptor;
+
+    public static CompletionResources create(InfinibandDevice device, int capacity) throws IOException {
+
+        // Create a completion channel, a completion queue and
+        // a file descriptor for processing completions
+        var completionChannel = device.createCompletionChannel();
+        var completionQueue = device.createCompletionQueue(capacity, completionChannel);
+        var fileDescriptor = FileDescriptor.create(completionChannel.getFileDescriptor());
+
+        // Set completion channel file descriptor into
+        // non-blocking mode and enable notifications
+        fileDescriptor.setFlags(FileDescriptor.OpenMode.NONBLOCK);
+        completionQueue.requestNotification(CompletionQueue.NotificationType.ALL);
+
+        return new CompletionResources(completionQueue, completionChannel, fileDescriptor);
+    }
+}
@@ -0,0 +1,191 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.agrona.collections.IntArrayQueue;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps handles to connections. Handles encode a slot index within the lower bits
+ * and a generation counter within the upper bits, so that slots can be recycled
+ * while stale handles are still detected.
+ *
+ * Lookups are lock-free. The table is split into fixed-size segments, so that growing
+ * it only requires copying the (small) segment directory instead of all entries.
+ */
+@ThreadSafe
+public final class ConnectionTable<T> {
+
+    /**
+     * The number of bits used for the slot index.
+     */
+    public static final int INDEX_BITS = 20;
+
+    /**
+     * The maximum number of connections this table can hold.
+     */
+    public static final int MAX_CAPACITY = 1 << INDEX_BITS;
+
+    private static final int INDEX_MASK = MAX_CAPACITY - 1;
+
+    private static final int GENERATION_MASK = (1 << (Integer.SIZE - INDEX_BITS)) - 1;
+
+    private static final int SEGMENT_BITS = 10;
+
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The segment directory. A new directory is published every time the table grows.
+     */
+    private volatile AtomicReferenceArray<Entry<T>>[] segments;
+
+    /**
+     * The current generation of each slot, indexed by segment. Only accessed while holding the lock.
+     */
+    private int[][] generations;
+
+    /**
+     * Slots released by removed connections.
+     */
+    private final IntArrayQueue freeSlots = new IntArrayQueue();
+
+    /**
+     * The number of slots handed out so far.
+     */
+    private int limit;
+
+    /**
+     * The number of connections within this table.
+     */
+    private int size;
+
+    public ConnectionTable() {
+        segments = newDirectory(0);
+        generations = new int[0][];
+    }
+
+    /**
+     * Reserves a new handle, which must be bound to a connection using {@link #set(int, Object)}.
+     */
+    public synchronized int allocate() {
+
+        // Prefer recycled slots over growing the table
+        if (!freeSlots.isEmpty()) {
+            var index = freeSlots.pollInt();
+            size++;
+            return encode(index, generations[index >>> SEGMENT_BITS][index & SEGMENT_MASK]);
+        }
+
+        if (limit == MAX_CAPACITY) {
+            throw new IllegalStateException("Connection table is full");
+        }
+
+        // Add a new segment if all existing slots are in use
+        var index = limit++;
+        var segment = index >>> SEGMENT_BITS;
+        if (segment == segments.length) {
+            grow();
+        }
+
+        size++;
+        return encode(index, 0);
+    }
+
+    /**
+     * Binds the connection to the previously allocated handle.
+     */
+    public void set(int handle, T connection) {
+        segments[index(handle) >>> SEGMENT_BITS].set(index(handle) & SEGMENT_MASK, new Entry<>(handle, connection));
+    }
+
+    /**
+     * Returns the connection associated with the handle or null if the handle is unknown or stale.
+     */
+    public @Nullable T get(int handle) {
+        var index = index(handle);
+        var directory = segments;
+        var segment = index >>> SEGMENT_BITS;
+        if (segment >= directory.length) {
+            return null;
+        }
+
+        var entry = directory[segment].get(index & SEGMENT_MASK);
+        return entry != null && entry.handle == handle ? entry.connection : null;
+    }
+
+    /**
+     * Removes the connection associated with the handle and returns it. Its slot
+     * will be reused with a new generation, so the handle is considered stale afterwards.
+     */
+    public synchronized @Nullable T remove(int handle) {
+        var index = index(handle);
+        var segment = index >>> SEGMENT_BITS;
+        if (segment >= segments.length || generations[segment][index & SEGMENT_MASK] != generation(handle)) {
+            return null;
+        }
+
+        // Invalidate the handle and clear the entry
+        var entry = segments[segment].getAndSet(index & SEGMENT_MASK, null);
+        generations[segment][index & SEGMENT_MASK] = (generation(handle) + 1) & GENERATION_MASK;
+        freeSlots.offerInt(index);
+        size--;
+
+        return entry == null ? null : entry.connection;
+    }
+
+    /**
+     * The number of allocated handles.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void grow() {
+        var length = segments.length;
+
+        // Copy the directory and publish it after the new segment has been added
+        var directory = Arrays.copyOf(segments, length + 1);
+        directory[length] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        generations = Arrays.copyOf(generations, length + 1);
+        generations[length] = new int[SEGMENT_SIZE];
+        segments = directory;
+    }
+
+    /**
+     * Creates an empty segment directory. Generic arrays can not be created directly, so that a raw array is
+     * cast to the directory's type. This is safe, since the directory never leaves this table and only ever
+     * holds segments created by {@link #grow()}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> AtomicReferenceArray<Entry<T>>[] newDirectory(int length) {
+        return (AtomicReferenceArray<Entry<T>>[]) new AtomicReferenceArray[length];
+    }
+
+    private static int encode(int index, int generation) {
+        return (generation << INDEX_BITS) | index;
+    }
+
+    private static int index(int handle) {
+        return handle & INDEX_MASK;
+    }
+
+    private static int generation(int handle) {
+        return (handle >>> INDEX_BITS) & GENERATION_MASK;
+    }
+
+    private static final class Entry<T> {
+
+        private final int handle;
+
+        private final T connection;
+
+        private Entry(int handle, T connection) {
+            this.handle = handle;
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import de.hhu.bsinfo.neutrino.api.network.impl.Requests;
+import de.hhu.bsinfo.neutrino.api.network.impl.buffer.RequestBuffer;
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Holds requests the agents could not append to a connection's request buffer, because it was full.
+ * The send agent is the only consumer of each request buffer, so agents must never wait for space
+ * within it. Held requests are appended by the send agent, once it processed the connection's requests.
+ */
+@ThreadSafe
+public final class ControlBacklog {
+
+    /**
+     * Requests waiting for space within the request buffer, in the order they were appended.
+     */
+    private final ArrayDeque<Request> requests = new ArrayDeque<>();
+
+    /**
+     * The number of held requests, which lets the send agent skip empty backlogs without locking.
+     */
+    private volatile int size;
+
+    /**
+     * Appends a control message carrying only a type and the remote's token.
+     */
+    public void appendControl(RequestBuffer buffer, int type, int token) {
+        append(buffer, new Request(type, token, -1, 0, 0, null, 0));
+    }
+
+    /**
+     * Appends a read request fetching a message announced using the rendezvous protocol.
+     */
+    public void appendRendezvousRead(RequestBuffer buffer, int slot, int token, long address, int key, RegisteredBuffer target, int length) {
+        append(buffer, new Request(0, token, slot, address, key, target, length));
+    }
+
+    private synchronized void append(RequestBuffer buffer, Request request) {
+
+        // Held requests go first, so that the remote sees all messages in order
+        if (size == 0 && request.tryAppend(buffer)) {
+            return;
+        }
+
+        requests.add(request);
+        size = requests.size();
+    }
+
+    /**
+     * Appends held requests until the request buffer is full and returns the number of appended requests.
+     */
+    public int flush(RequestBuffer buffer) {
+        if (size == 0) {
+            return 0;
+        }
+
+        synchronized (this) {
+            var appended = 0;
+            Request request;
+            while ((request = requests.peek()) != null && request.tryAppend(buffer)) {
+                requests.poll();
+                appended++;
+            }
+
+            size = requests.size();
+            return appended;
+        }
+    }
+
+    /**
+     * Drops all held requests. Transfers of held rendezvous reads are recycled and their targets passed to the specified consumer.
+     */
+    public synchronized void discard(RendezvousTable table, Consumer<RegisteredBuffer> targets) {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            if (request.slot != -1) {
+                table.recycle(table.get(request.slot));
+                targets.accept(request.target);
+            }
+        }
+
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static final class Request {
+
+        private final int type;
+
+        private final int token;
+
+        /**
+         * The rendezvous transfer's slot or -1 for control messages.
+         */
+        private final int slot;
+
+        private final long address;
+
+        private final int key;
+
+        private final RegisteredBuffer target;
+
+        private final int length;
+
+        private Request(int type, int token, int slot, long address, int key, RegisteredBuffer target, int length) {
+            this.type = type;
+            this.token = token;
+            this.slot = slot;
+            this.address = address;
+            this.key = key;
+            this.target = target;
+            this.length = length;
+        }
+
+        private boolean tryAppend(RequestBuffer buffer) {
+            if (slot == -1) {
+                return Requests.tryAppendControl(buffer, type, 0, 0, 0, token);
+            }
+
+            return Requests.tryAppendRendezvousRead(buffer, slot, token, address, key, target, length);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+/**
+ * Control messages are sent with immediate data holding the message type. Since regular
+ * messages never carry immediate data, receivers can tell both kinds apart without a header.
+ * Fragments of large messages carry their message's total length combined with {@link #FRAGMENT},
+ * while buffers containing coalesced messages are marked using {@link #COALESCED}.
+ *
+ *    0           8           12          16          20
+ *    +-----------+-----------+-----------+-----------+
+ *    |  ADDRESS  |    KEY    |  LENGTH   |   TOKEN   |
+ *    +-----------+-----------+-----------+-----------+
+ */
+public final class ControlMessage {
+
+    /**
+     * Announces a message the receiver should read from the sender's memory.
+     */
+    public static final int RENDEZVOUS_REQUEST = 1;
+
+    /**
+     * Signals that the receiver finished reading a message.
+     */
+    public static final int RENDEZVOUS_COMPLETE = 2;
+
+    /**
+     * Signals that the receiver could not read a message.
+     */
+    public static final int RENDEZVOUS_FAILED = 3;
+
+    /**
+     * Identifies writes granting credits to the remote. Grants are written directly
+     * into the remote's credit buffer and are never received as control messages.
+     */
+    public static final int CREDIT_GRANT = 4;
+
+    /**
+     * Marks the immediate data of a message fragment.
+     */
+    public static final int FRAGMENT = 1 << 31;
+
+    /**
+     * Marks the immediate data of a buffer containing multiple length-prefixed messages.
+     */
+    public static final int COALESCED = 1 << 30;
+
+    public static final int ADDRESS_OFFSET = 0;
+
+    public static final int KEY_OFFSET = ADDRESS_OFFSET + Long.BYTES;
+
+    public static final int LENGTH_OFFSET = KEY_OFFSET + Integer.BYTES;
+
+    public static final int TOKEN_OFFSET = LENGTH_OFFSET + Integer.BYTES;
+
+    /**
+     * The size of a control message's payload in bytes.
+     */
+    public static final int SIZE = TOKEN_OFFSET + Integer.BYTES;
+
+    private ControlMessage() {}
+}
@@ -5,8 +5,10 @@ import de.hhu.bsinfo.neutrino.util.EventFileDescriptor;
 import de.hhu.bsinfo.neutrino.util.FileDescriptor;
 import de.hhu.bsinfo.neutrino.util.function.ThrowingBiConsumer;
 import lombok.extern.slf4j.Slf4j;
+import org.agrona.collections.IntArrayQueue;
 
 import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
 import java.util.function.BiConsumer;
 
 @Slf4j
@@ -19,9 +21,14 @@ public class EpollWatchList<T, S> {
 
     private final Epoll.EventArray events;
 
-    private final T[] objects;
+    private T[] objects;
 
-    private final S[] attachments;
+    private S[] attachments;
+
+    /**
+     * Indices released by removed file descriptors.
+     */
+    private final IntArrayQueue freeIndices = new IntArrayQueue();
 
     private final EventFileDescriptor notifier;
 
@@ -43,17 +50,40 @@ public class EpollWatchList<T, S> {
         epoll.add(notifier, NOTIFIER_DATA, Epoll.EventType.EPOLLIN);
     }
 
-    public void add(FileDescriptor descriptor, T object, S attachement, Epoll.EventType... eventTypes) {
+    public int add(FileDescriptor descriptor, T object, S attachement, Epoll.EventType... eventTypes) {
+
+        // Reuse a released index or grow our arrays if all indices are in use
+        int slot;
+        if (freeIndices.isEmpty()) {
+            if (index == objects.length) {
+                objects = Arrays.copyOf(objects, objects.length << 1);
+                attachments = Arrays.copyOf(attachments, attachments.length << 1);
+            }
+
+            slot = index++;
+        } else {
+            slot = freeIndices.pollInt();
+        }
 
         // Add object and attachement to our array
-        objects[index] = object;
-        attachments[index] = attachement;
+        objects[slot] = object;
+        attachments[slot] = attachement;
 
         // Add file descriptor to our epoll instance
-        epoll.add(descriptor, index, eventTypes);
+        epoll.add(descriptor, slot, eventTypes);
+
+        return slot;
+    }
+
+    public void remove(FileDescriptor descriptor, int slot) {
+
+        // Remove file descriptor from our epoll instance
+        epoll.delete(descriptor);
 
-        // Increment index
-        index++;
+        // Release the index, so that it can be reused
+        objects[slot] = null;
+        attachments[slot] = null;
+        freeIndices.offerInt(slot);
     }
 
     public void wake() {
@@ -83,6 +113,11 @@ public class EpollWatchList<T, S> {
             var object = objects[eventIndex];
             var attachement = attachments[eventIndex];
 
+            // Skip events reported for file descriptors removed while processing this batch
+            if (attachement == null) {
+                continue;
+            }
+
             // Perform operation on the connection
             operation.accept(object, attachement);
         }
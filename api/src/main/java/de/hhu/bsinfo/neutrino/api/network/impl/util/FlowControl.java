@@ -0,0 +1,180 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.agrona.concurrent.AtomicBuffer;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of the credits exchanged between both sides of a connection. Each credit allows the sender to
+ * consume one receive buffer on the remote side. Receivers grant credits by writing the total number of credits
+ * granted so far into the sender's credit buffer, so that grants never consume receive buffers themselves.
+ *
+ * The sending part is only accessed by the send agent, while the receiving part is only accessed by the receive agent.
+ * The receive agent publishes grants, which the send agent writes to the remote ahead of all queued requests, so
+ * that grants are never held back by messages waiting for credits themselves.
+ */
+@ThreadSafe
+public final class FlowControl {
+
+    /**
+     * The number of bytes required for storing granted credits.
+     */
+    public static final int SIZE = Long.BYTES;
+
+    /**
+     * The buffer the remote writes granted credits into or null if flow control is disabled.
+     */
+    private final @Nullable AtomicBuffer buffer;
+
+    /**
+     * The number of credits each side starts with.
+     */
+    private final int initialCredits;
+
+    /**
+     * Credits are granted once this many messages were received since the last grant.
+     */
+    private final int grantInterval;
+
+    /**
+     * The remote's credit buffer address.
+     */
+    private long remoteAddress;
+
+    /**
+     * The remote's credit buffer key.
+     */
+    private int remoteKey;
+
+    /**
+     * The number of credits consumed by sending messages.
+     */
+    private long consumed;
+
+    /**
+     * The number of messages received from the remote.
+     */
+    private long received;
+
+    /**
+     * The number of received messages at the time credits were last granted.
+     */
+    private long grantedReceived;
+
+    /**
+     * The total number of credits granted to the remote. Published by the receive agent.
+     */
+    private volatile long granted;
+
+    /**
+     * The total number of credits the remote was told about.
+     */
+    private long sentGrant;
+
+    /**
+     * Whether granted credits are withheld from the remote, since the application does not keep up.
+     */
+    private volatile boolean paused;
+
+    public FlowControl(@Nullable AtomicBuffer buffer, int initialCredits) {
+        this.buffer = buffer;
+        this.initialCredits = initialCredits;
+        grantInterval = Math.max(1, initialCredits / 4);
+        granted = initialCredits;
+        sentGrant = initialCredits;
+
+        if (buffer != null) {
+            buffer.putLongVolatile(0, initialCredits);
+        }
+    }
+
+    /**
+     * The maximum size of a message split into fragments of the specified size, whose chain can be sent using
+     * the initial credits. Chains acquire all their credits at once, so larger messages would never be sent.
+     */
+    public static long maxMessageSize(int initialCredits, int fragmentSize) {
+        return (long) initialCredits * fragmentSize;
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Sets the location of the remote's credit buffer.
+     */
+    public void connect(long remoteAddress, int remoteKey) {
+        this.remoteAddress = remoteAddress;
+        this.remoteKey = remoteKey;
+    }
+
+    public long remoteAddress() {
+        return remoteAddress;
+    }
+
+    public int remoteKey() {
+        return remoteKey;
+    }
+
+    public @Nullable AtomicBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * The number of messages which may currently be sent to the remote.
+     */
+    public long available() {
+        return buffer == null ? Long.MAX_VALUE : buffer.getLongVolatile(0) - consumed;
+    }
+
+    public void consume(int credits) {
+        consumed += credits;
+    }
+
+    /**
+     * Records a message received from the remote.
+     */
+    public void onReceived() {
+        received++;
+    }
+
+    /**
+     * Whether enough messages were received since the last grant.
+     */
+    public boolean shouldGrant() {
+        return received - grantedReceived >= grantInterval;
+    }
+
+    /**
+     * Grants credits for all messages received so far.
+     */
+    public void grant() {
+        grantedReceived = received;
+        granted = initialCredits + received;
+    }
+
+    /**
+     * Withholds or releases credits granted to the remote.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Returns the total number of credits granted since the last call or zero if the remote is up to date.
+     */
+    public long pollGrant() {
+        if (paused) {
+            return 0;
+        }
+
+        var value = granted;
+        if (value == sentGrant) {
+            return 0;
+        }
+
+        sentGrant = value;
+        return value;
+    }
+}
@@ -15,11 +15,11 @@ public class Identifier {
      *    +-----+-----+-----+-----+-----+-----+-----+-----+
      */
     public static long create(int context, short flags, short attachement) {
-        return (long) flags << FLAGS_SHIFT | (long) attachement << ATTACHEMENT_SHIFT | context;
+        return (long) flags << FLAGS_SHIFT | (attachement & 0xFFFFL) << ATTACHEMENT_SHIFT | (context & 0xFFFFFFFFL);
     }
 
     public static long create(int context, short flags) {
-        return (long) flags << FLAGS_SHIFT | context;
+        return (long) flags << FLAGS_SHIFT | (context & 0xFFFFFFFFL);
     }
 
     @SuppressWarnings("PointlessBitwiseExpression")
@@ -28,7 +28,7 @@ public class Identifier {
     }
 
     public static int getAttachement(long identifier) {
-        return (short) (identifier >> ATTACHEMENT_SHIFT);
+        return (int) (identifier >> ATTACHEMENT_SHIFT) & 0xFFFF;
     }
 
     public static short getFlags(long identifier) {
@@ -1,30 +1,112 @@
 package de.hhu.bsinfo.neutrino.api.network.impl.util;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.Getter;
+import org.agrona.BitUtil;
 
-@AllArgsConstructor
-public @Data class QueuePairState {
+import javax.annotation.concurrent.NotThreadSafe;
+
+@NotThreadSafe
+public final class QueuePairState {
 
     /**
      * The queue pair's size.
      */
+    @Getter
     private final int size;
 
     /**
-     * Work requests pending within the queue pair.
+     * Every n-th work request is posted signaled.
+     */
+    @Getter
+    private final int signalInterval;
+
+    /**
+     * Identifiers of work requests pending within the queue pair in the order they were posted.
+     */
+    private final long[] identifiers;
+
+    /**
+     * Bitmask used to keep indices within the identifier array's bounds.
+     */
+    private final int indexMask;
+
+    /**
+     * The position of the oldest pending work request.
+     */
+    private long head;
+
+    /**
+     * The position at which the next posted work request is stored.
+     */
+    private long tail;
+
+    /**
+     * The number of work requests posted since the last signaled one.
+     */
+    private int unsignaled;
+
+    public QueuePairState(int size, int signalInterval) {
+        this.size = size;
+        this.signalInterval = signalInterval;
+
+        identifiers = new long[BitUtil.findNextPositivePowerOfTwo(size)];
+        indexMask = identifiers.length - 1;
+    }
+
+    /**
+     * The number of work requests pending within the queue pair.
      */
-    private int pending;
+    public int getPending() {
+        return (int) (tail - head);
+    }
 
     public int remaining() {
-        return size - pending;
+        return size - getPending();
+    }
+
+    public boolean hasPending() {
+        return tail != head;
     }
 
-    public void incrementPending(int value) {
-        pending += value;
+    /**
+     * The position the next added work request is stored at. Since identifiers are not unique, work requests
+     * are posted using their position as work request id, which identifies them as long as they are pending.
+     */
+    public long nextPosition() {
+        return tail;
     }
 
-    public void decrementPending(int value) {
-        pending -= value;
+    /**
+     * Whether the work request stored at the specified position is still pending.
+     */
+    public boolean isPending(long position) {
+        return position - head >= 0 && tail - position > 0;
+    }
+
+    /**
+     * Records a work request posted to the queue pair and returns true if it should be signaled.
+     */
+    public boolean add(long identifier) {
+        identifiers[(int) tail++ & indexMask] = identifier;
+        if (++unsignaled == signalInterval) {
+            unsignaled = 0;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Notifies this state that the most recently added work request is signaled.
+     */
+    public void markSignaled() {
+        unsignaled = 0;
+    }
+
+    /**
+     * Removes the oldest pending work request and returns its identifier.
+     */
+    public long poll() {
+        return identifiers[(int) head++ & indexMask];
     }
 }
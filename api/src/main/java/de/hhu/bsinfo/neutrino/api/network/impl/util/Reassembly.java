@@ -0,0 +1,92 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Reassembles fragmented messages received on a single connection. Since fragments of a message
+ * arrive in order and are never interleaved with other messages, a single buffer suffices.
+ * The buffer is allocated once the first fragmented message arrives and only grows
+ * if a larger message is received, so that steady state reassembly is allocation-free.
+ */
+@NotThreadSafe
+public final class Reassembly {
+
+    /**
+     * The buffer fragments are copied into.
+     */
+    private MutableDirectBuffer buffer;
+
+    /**
+     * The total length of the message currently being reassembled or zero if no message is in progress.
+     */
+    private int expected;
+
+    /**
+     * The number of bytes received so far.
+     */
+    private int position;
+
+    /**
+     * Appends a fragment of a message with the specified total length and returns
+     * true if the message is complete. A completed message stays valid until
+     * the next fragment is appended.
+     */
+    public boolean append(DirectBuffer fragment, int fragmentLength, int messageLength) {
+
+        // Start a new message if the previous one was completed
+        if (expected == 0) {
+            ensureCapacity(messageLength);
+            expected = messageLength;
+            position = 0;
+        }
+
+        // Fragments of a message must never exceed the announced length
+        if (messageLength != expected || position + fragmentLength > expected) {
+            expected = 0;
+            throw new IllegalStateException("Received fragment does not belong to the message in progress");
+        }
+
+        // Copy the fragment behind the previously received bytes
+        buffer.putBytes(position, fragment, 0, fragmentLength);
+        position += fragmentLength;
+        if (position < expected) {
+            return false;
+        }
+
+        expected = 0;
+        return true;
+    }
+
+    /**
+     * The buffer holding the most recently completed message.
+     */
+    public DirectBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * The length of the most recently completed message.
+     */
+    public int length() {
+        return position;
+    }
+
+    /**
+     * Whether a message is currently being reassembled.
+     */
+    public boolean inProgress() {
+        return expected != 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = MemoryUtil.allocateAligned(BitUtil.align(capacity, MemoryAlignment.PAGE.value()), MemoryAlignment.PAGE);
+        }
+    }
+}
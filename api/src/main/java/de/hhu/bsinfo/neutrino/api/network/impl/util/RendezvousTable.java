@@ -0,0 +1,103 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import de.hhu.bsinfo.neutrino.api.util.RegisteredBuffer;
+import org.agrona.concurrent.ManyToManyConcurrentArrayQueue;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of messages which are currently read from a remote using the rendezvous protocol.
+ * Transfers are started by the receive agent, read by the send agent and delivered by the receive agent.
+ */
+@ThreadSafe
+public final class RendezvousTable {
+
+    /**
+     * All transfers indexed by their slot.
+     */
+    private final Transfer[] transfers;
+
+    /**
+     * Transfers which are currently unused.
+     */
+    private final ManyToManyConcurrentArrayQueue<Transfer> free;
+
+    /**
+     * Transfers whose message was read completely, but not yet passed to the network handler.
+     */
+    private final ManyToManyConcurrentArrayQueue<Transfer> finished;
+
+    public RendezvousTable(int capacity) {
+        transfers = new Transfer[capacity];
+        free = new ManyToManyConcurrentArrayQueue<>(capacity);
+        finished = new ManyToManyConcurrentArrayQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            transfers[i] = new Transfer(i);
+            free.offer(transfers[i]);
+        }
+    }
+
+    /**
+     * Starts a new transfer and returns its slot or -1 if too many transfers are in progress.
+     */
+    public int add(RegisteredBuffer target, int length) {
+        var transfer = free.poll();
+        if (transfer == null) {
+            return -1;
+        }
+
+        transfer.target = target;
+        transfer.length = length;
+        return transfer.slot;
+    }
+
+    /**
+     * Returns the transfer within the specified slot. The returned transfer must
+     * be recycled using {@link #recycle(Transfer)} after it has been finished.
+     */
+    public @Nullable Transfer get(int slot) {
+        return slot < transfers.length ? transfers[slot] : null;
+    }
+
+    /**
+     * Marks the transfer's message as read, so that the receive agent passes it to the network handler.
+     */
+    public void finish(Transfer transfer) {
+        finished.offer(transfer);
+    }
+
+    /**
+     * Returns the next transfer whose message was read completely or null if there is none.
+     * The returned transfer must be recycled after its message was passed to the network handler.
+     */
+    public @Nullable Transfer pollFinished() {
+        return finished.poll();
+    }
+
+    public void recycle(Transfer transfer) {
+        transfer.target = null;
+        free.offer(transfer);
+    }
+
+    public static final class Transfer {
+
+        private final int slot;
+
+        private RegisteredBuffer target;
+
+        private int length;
+
+        private Transfer(int slot) {
+            this.slot = slot;
+        }
+
+        public RegisteredBuffer getTarget() {
+            return target;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -6,7 +6,14 @@ import lombok.val;
 
 public enum RequestFlag implements ShortFlag {
     DIRECT((short) (1 << 0)),
-    NO_DATA((short) (1 << 1));
+    NO_DATA((short) (1 << 1)),
+    INLINE((short) (1 << 2)),
+    POOLED((short) (1 << 3)),
+    CONTROL((short) (1 << 4)),
+    RENDEZVOUS((short) (1 << 5)),
+    FRAGMENT((short) (1 << 6)),
+    COALESCE((short) (1 << 7)),
+    BATCH((short) (1 << 8));
 
     private final short value;
 
@@ -1,17 +1,32 @@
 package de.hhu.bsinfo.neutrino.api.network.impl.util;
 
+import de.hhu.bsinfo.neutrino.api.network.impl.Requests;
+import de.hhu.bsinfo.neutrino.api.network.impl.accessor.ScatterGatherAccessor;
 import de.hhu.bsinfo.neutrino.api.network.impl.accessor.SendRequestAccessor;
+import de.hhu.bsinfo.neutrino.api.network.impl.buffer.BufferPool;
+import de.hhu.bsinfo.neutrino.api.network.impl.buffer.RequestBuffer;
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.BitMask;
 import de.hhu.bsinfo.neutrino.verbs.QueuePair;
 import de.hhu.bsinfo.neutrino.verbs.ScatterGatherElement;
 import de.hhu.bsinfo.neutrino.verbs.SendWorkRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.MutableDirectBuffer;
-import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.AtomicBuffer;
 
 import java.io.IOException;
 
 @Slf4j
-public final class RequestProcessor implements MessageHandler {
+public final class RequestProcessor implements RequestBuffer.RequestHandler {
+
+    private static final int SIGNALED = BitMask.intOf(SendWorkRequest.SendFlag.SIGNALED);
+
+    private static final int SEND = SendWorkRequest.OpCode.SEND.getValue();
+
+    private static final int SEND_WITH_IMM = SendWorkRequest.OpCode.SEND_WITH_IMM.getValue();
+
+    private static final int RDMA_WRITE_WITH_IMM = SendWorkRequest.OpCode.RDMA_WRITE_WITH_IMM.getValue();
 
     /**
      * Helper object used for wrapping the first request.
@@ -35,23 +50,117 @@ public final class RequestProcessor implements MessageHandler {
      */
     private int count;
 
+    /**
+     * Whether the current request is signaled.
+     */
+    private boolean signaled;
+
+    /**
+     * The state of the queue pair requests are processed for.
+     */
+    private QueuePairState state;
+
+    /**
+     * The pool buffers for coalesced messages are claimed from.
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * Memory holding the work requests created for coalesced messages until they are posted.
+     */
+    private final AtomicBuffer batchRequests;
+
+    /**
+     * The number of work requests created for coalesced messages since the last reset.
+     */
+    private int batches;
+
+    /**
+     * The number of nanoseconds coalesced messages may be held back waiting for further messages.
+     */
+    private final long coalescingTimeout;
+
+    /**
+     * Packs coalescable messages of the connection requests are processed for.
+     */
+    private Coalescer coalescer;
+
+    /**
+     * Tracks the credits granted by the remote of the connection requests are processed for.
+     */
+    private FlowControl flowControl;
+
+    /**
+     * The number of messages which may still be sent to the remote during this pass.
+     */
+    private long credits;
+
+    /**
+     * Memory holding the work request which writes granted credits to the remote.
+     */
+    private final AtomicBuffer grantRequest;
+
+    public RequestProcessor(BufferPool bufferPool, int queuePairSize, long coalescingTimeout) {
+        this.bufferPool = bufferPool;
+        this.coalescingTimeout = coalescingTimeout;
+        batchRequests = MemoryUtil.allocateAligned(queuePairSize * RequestBuffer.CHAIN_ELEMENT_SIZE, MemoryAlignment.PAGE);
+        grantRequest = MemoryUtil.allocateAligned(RequestBuffer.CHAIN_ELEMENT_SIZE + FlowControl.SIZE, MemoryAlignment.CACHE);
+    }
+
     /**
      * Resets this processors state.
      */
-    public void reset() {
+    public void reset(QueuePairState state, Coalescer coalescer, FlowControl flowControl) {
+        this.state = state;
+        this.coalescer = coalescer;
+        this.flowControl = flowControl;
+        credits = flowControl.available();
         first = 0;
         current = 0;
         count = 0;
+        batches = 0;
+        signaled = false;
+    }
+
+    /**
+     * Posts credits granted to the remote ahead of all queued requests, since the remote may be waiting
+     * for them before it can send anything. Returns the number of work requests used for doing so.
+     */
+    public int grantCredits() {
+        if (!flowControl.isEnabled()) {
+            return 0;
+        }
+
+        var granted = flowControl.pollGrant();
+        if (granted == 0) {
+            return 0;
+        }
+
+        Requests.prepareCreditGrant(grantRequest.addressOffset(), granted, flowControl.remoteAddress(), flowControl.remoteKey());
+        link(grantRequest.addressOffset());
+        return 1;
     }
 
     /**
      * Commits the aggregated operations to the specified queue pair returning the number of commited operations.
      */
     public int commit(QueuePair queuePair) throws IOException {
+
+        // Send coalesced messages unless we may wait for further messages
+        if (!coalescer.isEmpty() && (coalescingTimeout == 0 || System.nanoTime() - coalescer.deadline() >= 0)) {
+            flush();
+        }
+
         if (first == 0) {
             return 0;
         }
 
+        // Always signal the last request, so that all requests within this batch get retired eventually
+        if (!signaled) {
+            signal(current);
+            state.markSignaled();
+        }
+
 //        request.wrap(first);
 //        while (request.getHandle() != 0) {
 //            log.info("{}", request);
@@ -64,21 +173,124 @@ public final class RequestProcessor implements MessageHandler {
     }
 
     @Override
-    public void onMessage(int msgTypeId, MutableDirectBuffer buffer, int index, int length) {
+    public boolean onRequest(int requests, MutableDirectBuffer buffer, int index, int length) {
         // Calculate the request's virtual memory address
         var request = buffer.addressOffset() + index;
 
-        // Remember the first request to post it later
+        // Pack coalescable messages instead of posting them
+        var identifier = SendRequestAccessor.getId(request);
+        if (BitMask.isSet(Identifier.getFlags(identifier), RequestFlag.COALESCE)) {
+            return coalesce(request, Identifier.getContext(identifier));
+        }
+
+        // Leave the record within the buffer if the remote can not receive all messages it contains yet
+        if (flowControl.isEnabled() && !acquire(requiredCredits(request))) {
+            return false;
+        }
+
+        // Messages packed so far must be sent first to preserve ordering
+        flush();
+
+        // Records containing more than one request hold a chain, which was already linked by its producer
+        do {
+            var next = SendRequestAccessor.getNext(request);
+            link(request);
+            request = next;
+        } while (request != 0);
+
+        return true;
+    }
+
+    private boolean coalesce(long request, int id) {
+
+        // The message is stored as the request's inline payload
+        var element = SendRequestAccessor.getListHandle(request);
+        var length = ScatterGatherAccessor.getLength(element);
+
+        // Send the current buffer if the message does not fit into it
+        if (!coalescer.isEmpty() && !coalescer.fits(length)) {
+            flush();
+        }
+
+        if (coalescer.isEmpty()) {
+
+            // The packed messages will consume a single receive buffer on the remote
+            if (flowControl.isEnabled() && !acquire(1)) {
+                return false;
+            }
+
+            var target = bufferPool.claim();
+            coalescer.start(target, target.getIdentifier(), System.nanoTime() + coalescingTimeout);
+        }
+
+        coalescer.append(ScatterGatherAccessor.getAddress(element), length, id);
+        return true;
+    }
+
+    private boolean acquire(int required) {
+        if (required > credits) {
+            return false;
+        }
+
+        credits -= required;
+        flowControl.consume(required);
+        return true;
+    }
+
+    /**
+     * Counts the requests within the chain, which consume a receive buffer on the remote.
+     */
+    private static int requiredCredits(long request) {
+        var required = 0;
+        do {
+            var opCode = SendRequestAccessor.getOpCode(request);
+            if (opCode == SEND || opCode == SEND_WITH_IMM || opCode == RDMA_WRITE_WITH_IMM) {
+                required++;
+            }
+
+            request = SendRequestAccessor.getNext(request);
+        } while (request != 0);
+
+        return required;
+    }
+
+    private void flush() {
+        if (coalescer.isEmpty()) {
+            return;
+        }
+
+        // Create a work request sending all messages packed into the current buffer
+        var request = batchRequests.addressOffset() + (long) batches++ * RequestBuffer.CHAIN_ELEMENT_SIZE;
+        var target = bufferPool.get(coalescer.identifier());
+        Requests.prepareBatchSend(request, target, coalescer.length(), coalescer.count());
+        coalescer.reset();
+
+        link(request);
+    }
+
+    private void link(long request) {
+
+        // Remember the first request to post it later or link the current element with the next element
         if (first == 0) {
             first = request;
-            current = request;
-            count = 1;
-            return;
+        } else {
+            SendRequestAccessor.setNext(current, request);
         }
 
-        // Link the current element with the next element
-        SendRequestAccessor.setNext(current, request);
         current = request;
         count++;
+
+        // Track the request and signal it if the queue pair's signal interval is reached. The request is
+        // posted using its position within the queue pair, since identifiers are not unique.
+        var position = state.nextPosition();
+        signaled = state.add(SendRequestAccessor.getId(request));
+        SendRequestAccessor.setId(request, position);
+        if (signaled) {
+            signal(request);
+        }
+    }
+
+    private static void signal(long request) {
+        SendRequestAccessor.setFlags(request, SendRequestAccessor.getFlags(request) | SIGNALED);
     }
 }
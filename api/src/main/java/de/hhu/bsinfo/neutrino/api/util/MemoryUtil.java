@@ -1,6 +1,8 @@
 package de.hhu.bsinfo.neutrino.api.util;
 
+import de.hhu.bsinfo.neutrino.util.HugePageUtil;
 import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.NumaUtil;
 import de.hhu.bsinfo.neutrino.verbs.MemoryRegion;
 import lombok.extern.slf4j.Slf4j;
 import org.agrona.BufferUtil;
@@ -27,7 +29,55 @@ public class MemoryUtil {
         return buffer.addressOffset() + buffer.capacity() <= region.getAddress() + region.getLength();
     }
 
+    /**
+     * Allocates off-heap memory with the specified alignment. Memory aligned to {@link MemoryAlignment#HUGE_PAGE}
+     * is backed by huge pages, which reduces the number of address translations the CPU and the device need.
+     * In this case, the buffer's capacity is rounded up to a multiple of the huge page size.
+     */
     public static AtomicBuffer allocateAligned(int size, MemoryAlignment alignment) {
+        if (alignment == MemoryAlignment.HUGE_PAGE) {
+            return allocateHugePages(size);
+        }
+
         return new UnsafeBuffer(BufferUtil.allocateDirectAligned(size, alignment.value()));
     }
+
+    private static AtomicBuffer allocateHugePages(int size) {
+
+        // Prefer huge pages reserved by the administrator, since they are guaranteed to be huge pages
+        try {
+            return new UnsafeBuffer(HugePageUtil.allocateHugeTlb(size));
+        } catch (IllegalStateException e) {
+            log.debug("Allocating {} bytes of reserved huge pages failed, falling back to transparent huge pages", size);
+        }
+
+        // Transparent huge pages are used if the kernel is able to provide them
+        try {
+            return new UnsafeBuffer(HugePageUtil.allocateTransparent(size));
+        } catch (IllegalStateException e) {
+            log.warn("Allocating {} bytes of transparent huge pages failed, falling back to regular pages", size, e);
+        }
+
+        return new UnsafeBuffer(BufferUtil.allocateDirectAligned(size, MemoryAlignment.PAGE.value()));
+    }
+
+    /**
+     * Returns a registrator, which binds memory to the NUMA node before registering it using the specified
+     * registrator. Memory which can not be bound is registered anyway, since binding is only an optimization.
+     */
+    public static BufferRegistrator bindTo(int node, BufferRegistrator registrator) {
+        if (node == NumaUtil.UNKNOWN_NODE) {
+            return registrator;
+        }
+
+        return (handle, capacity, accessFlags) -> {
+            try {
+                NumaUtil.bind(handle, capacity, node);
+            } catch (IllegalArgumentException e) {
+                log.warn("Binding {} bytes to NUMA node {} failed", capacity, node, e);
+            }
+
+            return registrator.wrap(handle, capacity, accessFlags);
+        };
+    }
 }
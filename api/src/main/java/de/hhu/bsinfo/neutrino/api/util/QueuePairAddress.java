@@ -10,4 +10,16 @@ public @Value class QueuePairAddress implements Serializable {
     private final short localId;
     private final int queuePairNumber;
     private final byte portNumber;
+    private final long creditAddress;
+    private final int creditKey;
+
+    /**
+     * Whether this side uses the connection as a high-priority lane.
+     */
+    private final boolean priority;
+
+    /**
+     * The service level this side sends with, which the remote adopts for high-priority lanes.
+     */
+    private final byte serviceLevel;
 }
@@ -8,5 +8,12 @@ public interface RegisteredBuffer extends AtomicBuffer {
 
     int remoteKey();
 
+    /**
+     * Whether remotes may access this buffer. Buffers without remote access have no valid {@link #remoteKey()}.
+     */
+    default boolean isRemotelyAccessible() {
+        return true;
+    }
+
     void release() throws Exception;
 }
@@ -0,0 +1,455 @@
+package de.hhu.bsinfo.neutrino.api.util;
+
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.verbs.AccessFlag;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.BitUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+/**
+ * Caches memory regions for arbitrary off-heap memory, so that registering the same memory again
+ * only costs a lookup. Misses register the requested range rounded to the cache's granularity, so that
+ * neighbouring buffers share one memory region. Regions which are not in use are evicted in least
+ * recently used order as soon as the pinned memory exceeds the cache's capacity.
+ *
+ * Rounded regions cover memory the caller never asked to register. Caches granting remote access
+ * therefore always register with page granularity, so that remotes can not reach unrelated memory.
+ *
+ * The cache can not observe memory being unmapped. Callers must release all buffers acquired for a range and
+ * {@link #invalidate(long, long) invalidate} it before unmapping or freeing it. Otherwise, a region may stay
+ * pinned to the old pages and later lookups for memory mapped at the same addresses would return stale keys.
+ */
+@Slf4j
+@ThreadSafe
+public final class RegistrationCache implements AutoCloseable {
+
+    /**
+     * Used to register memory on cache misses.
+     */
+    private final Registrator registrator;
+
+    /**
+     * The access flags used for all memory regions.
+     */
+    private final AccessFlag[] accessFlags;
+
+    /**
+     * Whether the access flags grant remote access.
+     */
+    private final boolean remote;
+
+    /**
+     * The granularity memory is registered with, which is a power of two and at least one page.
+     * Always one page if the access flags grant remote access.
+     */
+    private final long granularity;
+
+    /**
+     * The maximum number of pinned bytes. Regions in use are never evicted, so the capacity may be exceeded temporarily.
+     */
+    private final long capacity;
+
+    /**
+     * All cached regions indexed by their start address.
+     */
+    private final TreeMap<Long, Entry> regions = new TreeMap<>();
+
+    /**
+     * Cached regions not in use, ordered from least to most recently used.
+     */
+    private final LinkedHashSet<Entry> unused = new LinkedHashSet<>();
+
+    /**
+     * The length of the largest cached region, which limits how far lookups have to search.
+     */
+    private long maxLength;
+
+    /**
+     * The number of bytes currently pinned by this cache.
+     */
+    private volatile long pinnedBytes;
+
+    private volatile long hits;
+
+    private volatile long misses;
+
+    private volatile long evictions;
+
+    private volatile long registrations;
+
+    private volatile long registrationTime;
+
+    private boolean closed;
+
+    public RegistrationCache(Registrator registrator, long granularity, long capacity, AccessFlag... accessFlags) {
+        if (!BitUtil.isPowerOfTwo(granularity) || granularity < MemoryAlignment.PAGE.value()) {
+            throw new IllegalArgumentException("granularity must be a power of two and at least one page");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.registrator = registrator;
+        this.remote = isRemote(accessFlags);
+        this.granularity = remote ? MemoryAlignment.PAGE.value() : granularity;
+        this.capacity = capacity;
+        this.accessFlags = accessFlags.clone();
+    }
+
+    /**
+     * Adapts a {@link BufferRegistrator} creating memory regions to this cache.
+     */
+    public static Registrator memoryRegions(BufferRegistrator registrator) {
+        return (address, length, accessFlags) -> {
+            var region = registrator.wrap(address, length, accessFlags);
+            return new Registration() {
+
+                @Override
+                public int getLocalKey() {
+                    return region.getLocalKey();
+                }
+
+                @Override
+                public int getRemoteKey() {
+                    return region.getRemoteKey();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    region.close();
+                }
+            };
+        };
+    }
+
+    private static boolean isRemote(AccessFlag... accessFlags) {
+        for (var flag : accessFlags) {
+            if (flag == AccessFlag.REMOTE_READ || flag == AccessFlag.REMOTE_WRITE || flag == AccessFlag.REMOTE_ATOMIC || flag == AccessFlag.MW_BIND) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a {@link RegisteredBuffer} wrapping the specified off-heap memory. The buffer must be released
+     * after all operations using it completed, which returns its memory region to the cache.
+     */
+    public synchronized RegisteredBuffer acquire(long address, int length) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("registration cache is closed");
+        }
+
+        if (address == 0 || length <= 0) {
+            throw new IllegalArgumentException("invalid memory range");
+        }
+
+        // Look up a cached region containing the whole range and register a new one on miss
+        var entry = lookup(address, length);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            entry = register(address, length);
+        }
+
+        // Entries in use must not be evicted
+        if (entry.references++ == 0) {
+            unused.remove(entry);
+        }
+
+        return new CachedBuffer(this, entry, address, length);
+    }
+
+    private Entry lookup(long address, int length) {
+        var end = address + length;
+
+        // Regions starting before this bound are too short to contain the range
+        var bound = end - maxLength;
+        for (var entry = regions.floorEntry(address); entry != null && entry.getKey() >= bound; entry = regions.lowerEntry(entry.getKey())) {
+            if (entry.getValue().end >= end) {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private Entry register(long address, int length) throws IOException {
+        var start = address & -granularity;
+        var end = (address + length + granularity - 1) & -granularity;
+        var pageSize = MemoryAlignment.PAGE.value();
+
+        // Step 1: Register the rounded range, which may fail if neighbouring memory is not mapped
+        Registration region;
+        var startTime = System.nanoTime();
+        try {
+            region = registrator.register(start, end - start, accessFlags);
+        } catch (IOException e) {
+            if (granularity == pageSize) {
+                throw e;
+            }
+
+            log.debug("Registering [0x{}, 0x{}) failed, falling back to page granularity", Long.toHexString(start), Long.toHexString(end));
+            start = address & -pageSize;
+            end = (address + length + pageSize - 1) & -pageSize;
+            region = registrator.register(start, end - start, accessFlags);
+        } finally {
+            registrations++;
+            registrationTime += System.nanoTime() - startTime;
+        }
+
+        // Step 2: Replace cached regions covered by the new region
+        var covered = regions.subMap(start, true, end, false).values().iterator();
+        while (covered.hasNext()) {
+            var entry = covered.next();
+            if (entry.end > end) {
+                continue;
+            }
+
+            covered.remove();
+            if (entry.references == 0) {
+                unused.remove(entry);
+                deregister(entry);
+            } else {
+                entry.detached = true;
+            }
+        }
+
+        // Step 3: Index the new region
+        var entry = new Entry(start, end, region);
+        regions.put(start, entry);
+        maxLength = Math.max(maxLength, end - start);
+        pinnedBytes += end - start;
+
+        // Step 4: Make room for the new region
+        evict();
+
+        return entry;
+    }
+
+    /**
+     * Drops all cached regions overlapping the specified range, which must be called before the range is unmapped.
+     * Regions not in use are deregistered immediately, while regions still in use are deregistered once their
+     * buffers are released. Subsequent acquisitions always register the range again.
+     */
+    public synchronized void invalidate(long address, long length) {
+        if (closed || length <= 0) {
+            return;
+        }
+
+        // Only regions starting within the largest region's length before the range may overlap it
+        var end = address + length;
+        var overlapping = regions.subMap(address - maxLength, false, end, false).values().iterator();
+        while (overlapping.hasNext()) {
+            var entry = overlapping.next();
+            if (entry.end <= address) {
+                continue;
+            }
+
+            overlapping.remove();
+            if (entry.references == 0) {
+                unused.remove(entry);
+                deregister(entry);
+            } else {
+                entry.detached = true;
+            }
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        }
+
+        // Regions replaced or dropped while in use are deregistered as soon as they are no longer in use
+        if (entry.detached || closed) {
+            deregister(entry);
+            return;
+        }
+
+        unused.add(entry);
+        evict();
+    }
+
+    private void evict() {
+        var iterator = unused.iterator();
+        while (pinnedBytes > capacity && iterator.hasNext()) {
+            var entry = iterator.next();
+            iterator.remove();
+            regions.remove(entry.start);
+            deregister(entry);
+            evictions++;
+        }
+    }
+
+    private void deregister(Entry entry) {
+        pinnedBytes -= entry.end - entry.start;
+        try {
+            entry.region.close();
+        } catch (IOException e) {
+            log.warn("Deregistering memory region [0x{}, 0x{}) failed", Long.toHexString(entry.start), Long.toHexString(entry.end), e);
+        }
+    }
+
+    /**
+     * The number of bytes currently pinned by this cache.
+     */
+    public long getPinnedBytes() {
+        return pinnedBytes;
+    }
+
+    /**
+     * The number of lookups served by a cached region.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of lookups which required registering memory.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of regions evicted to stay within the cache's capacity.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The number of memory registrations performed by this cache.
+     */
+    public long getRegistrations() {
+        return registrations;
+    }
+
+    /**
+     * The total time spent registering memory in nanoseconds.
+     */
+    public long getRegistrationTime() {
+        return registrationTime;
+    }
+
+    /**
+     * Deregisters all cached regions. Regions still in use are deregistered once their buffers are released.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (var entry : regions.values()) {
+            if (entry.references == 0) {
+                deregister(entry);
+            }
+        }
+
+        regions.clear();
+        unused.clear();
+    }
+
+    /**
+     * Registers memory on cache misses.
+     */
+    @FunctionalInterface
+    public interface Registrator {
+        Registration register(long address, long length, AccessFlag... accessFlags) throws IOException;
+    }
+
+    /**
+     * A registered range of memory, which is deregistered once closed.
+     */
+    public interface Registration extends AutoCloseable {
+
+        int getLocalKey();
+
+        int getRemoteKey();
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class Entry {
+
+        private final long start;
+
+        private final long end;
+
+        private final Registration region;
+
+        /**
+         * The number of buffers currently using this region.
+         */
+        private int references;
+
+        /**
+         * Whether this region was removed from the index while in use.
+         */
+        private boolean detached;
+
+        private Entry(long start, long end, Registration region) {
+            this.start = start;
+            this.end = end;
+            this.region = region;
+        }
+    }
+
+    private static final class CachedBuffer extends UnsafeBuffer implements RegisteredBuffer {
+
+        private final RegistrationCache cache;
+
+        private final Entry entry;
+
+        private boolean released;
+
+        private CachedBuffer(RegistrationCache cache, Entry entry, long address, int length) {
+            super(address, length);
+            this.cache = cache;
+            this.entry = entry;
+        }
+
+        @Override
+        public int localKey() {
+            return entry.region.getLocalKey();
+        }
+
+        @Override
+        public boolean isRemotelyAccessible() {
+            return cache.remote;
+        }
+
+        @Override
+        public int remoteKey() {
+            if (!cache.remote) {
+                throw new UnsupportedOperationException("Registration cache does not grant remote access");
+            }
+
+            return entry.region.getRemoteKey();
+        }
+
+        @Override
+        public void release() {
+            if (released) {
+                throw new IllegalStateException("buffer was already released");
+            }
+
+            released = true;
+            cache.release(entry);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CachedBuffer{ region: [ 0x%08X , 0x%08X ], capacity: %d, lkey: 0x%04X }",
+                    addressOffset(), addressOffset() + capacity(), capacity(), localKey());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package de.hhu.bsinfo.neutrino.api.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedChannelTest {
+
+    private static final List<InfinibandChannel> LANES = List.of(
+            new InfinibandChannel(0, null),
+            new InfinibandChannel(1, null),
+            new InfinibandChannel(2, null)
+    );
+
+    @Test
+    public void testStreamKey() {
+        var channel = new StripedChannel(LANES);
+
+        // Requests using the same stream key always use the same lane
+        assertThat(channel.lane(4)).isSameAs(channel.lane(4));
+        assertThat(channel.lane(4).getId()).isEqualTo(1);
+        assertThat(channel.lane(-1).getId()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        var channel = new StripedChannel(LANES);
+
+        assertThat(channel.next().getId()).isEqualTo(0);
+        assertThat(channel.next().getId()).isEqualTo(1);
+        assertThat(channel.next().getId()).isEqualTo(2);
+        assertThat(channel.next().getId()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,117 @@
+package de.hhu.bsinfo.neutrino.api.network.flow;
+
+import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
+import de.hhu.bsinfo.neutrino.api.network.NetworkService;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessagePublisherTest {
+
+    @Test
+    public void testBackpressure() {
+        var paused = new ArrayList<Boolean>();
+        var channel = createChannel(paused);
+        var publisher = new MessagePublisher();
+        var subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        // Messages are delivered directly while demand is available
+        subscriber.subscription.request(1);
+        publisher.onMessage(channel, message(1), 0, Integer.BYTES);
+        assertThat(subscriber.values).containsExactly(1);
+        assertThat(paused).isEmpty();
+
+        // Messages without demand are queued and pause the channel
+        publisher.onMessage(channel, message(2), 0, Integer.BYTES);
+        publisher.onMessage(channel, message(3), 0, Integer.BYTES);
+        assertThat(subscriber.values).containsExactly(1);
+        assertThat(paused).containsExactly(true);
+
+        subscriber.subscription.request(2);
+        assertThat(subscriber.values).containsExactly(1, 2, 3);
+        assertThat(paused).containsExactly(true, false);
+    }
+
+    @Test
+    public void testMessagesOutliveReceiveBuffer() {
+        var channel = createChannel(new ArrayList<>());
+        var publisher = new MessagePublisher();
+        var subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        // The receive buffer is reused once the handler returns, which must not affect emitted messages
+        var receiveBuffer = message(1);
+        subscriber.subscription.request(1);
+        publisher.onMessage(channel, receiveBuffer, 0, Integer.BYTES);
+        receiveBuffer.putInt(0, 2);
+
+        assertThat(subscriber.buffers).hasSize(1);
+        assertThat(subscriber.buffers.get(0).getInt(0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testSingleSubscriber() {
+        var publisher = new MessagePublisher();
+        publisher.subscribe(new RecordingSubscriber());
+
+        var rejected = new RecordingSubscriber();
+        publisher.subscribe(rejected);
+        assertThat(rejected.error).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static UnsafeBuffer message(int value) {
+        var buffer = new UnsafeBuffer(new byte[Integer.BYTES]);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+
+    private static InfinibandChannel createChannel(List<Boolean> paused) {
+        var network = (NetworkService) Proxy.newProxyInstance(NetworkService.class.getClassLoader(), new Class[]{ NetworkService.class }, (proxy, method, args) -> {
+            if (method.getName().equals("setReceivePaused")) {
+                paused.add((Boolean) args[1]);
+            }
+
+            return null;
+        });
+
+        return new InfinibandChannel(0, network);
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<DirectBuffer> {
+
+        private final List<Integer> values = new ArrayList<>();
+
+        private final List<DirectBuffer> buffers = new ArrayList<>();
+
+        private Flow.Subscription subscription;
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(DirectBuffer item) {
+            values.add(item.getInt(0));
+            buffers.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {}
+    }
+}
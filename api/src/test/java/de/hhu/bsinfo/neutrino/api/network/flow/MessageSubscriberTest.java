@@ -0,0 +1,67 @@
+package de.hhu.bsinfo.neutrino.api.network.flow;
+
+import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
+import de.hhu.bsinfo.neutrino.api.network.NetworkService;
+import de.hhu.bsinfo.neutrino.api.network.RequestStatus;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+class MessageSubscriberTest {
+
+    @Test
+    public void testRejectedMessageCancels() {
+        var subscriber = new MessageSubscriber(createChannel(Integer.BYTES), 4);
+        var subscription = new RecordingSubscription();
+        subscriber.onSubscribe(subscription);
+
+        subscriber.onNext(new UnsafeBuffer(new byte[Integer.BYTES]));
+        assertThat(subscription.requested).isEqualTo(5);
+
+        // Oversized messages make the channel throw, which must not escape onNext
+        assertThatCode(() -> subscriber.onNext(new UnsafeBuffer(new byte[Integer.BYTES + 1]))).doesNotThrowAnyException();
+        assertThat(subscription.cancelled).isTrue();
+
+        // Messages still in flight are dropped
+        subscriber.onNext(new UnsafeBuffer(new byte[Integer.BYTES]));
+        assertThat(subscription.requested).isEqualTo(5);
+    }
+
+    private static InfinibandChannel createChannel(int maxMessageSize) {
+        var network = (NetworkService) Proxy.newProxyInstance(NetworkService.class.getClassLoader(), new Class[]{ NetworkService.class }, (proxy, method, args) -> {
+            if (method.getName().equals("trySend")) {
+                if ((Integer) args[4] > maxMessageSize) {
+                    throw new IllegalArgumentException("Message size exceeds maximum");
+                }
+
+                return RequestStatus.SUCCESS;
+            }
+
+            return null;
+        });
+
+        return new InfinibandChannel(0, network);
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+
+        private long requested;
+
+        private boolean cancelled;
+
+        @Override
+        public void request(long count) {
+            requested += count;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
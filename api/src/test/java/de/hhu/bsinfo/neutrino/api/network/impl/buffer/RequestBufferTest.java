@@ -36,4 +36,65 @@ class RequestBufferTest {
         buffer.commitRead(bytes);
         assertThat(buffer.size()).isEqualTo(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPayloadClaim() {
+        var buffer = new RequestBuffer(MemoryAlignment.PAGE.value());
+        var payloadLength = 42;
+
+        var index = buffer.tryClaim(1, payloadLength);
+        buffer.commitWrite(index);
+
+        var expectedSize = BitUtil.align(HEADER_LENGTH + SendRequestAccessor.ELEMENT_SIZE + ScatterGatherAccessor.ELEMENT_SIZE + payloadLength, ALIGNMENT);
+        assertThat(buffer.size()).isEqualTo(expectedSize);
+
+        var bytes = buffer.read((type, data, offset, length) -> {
+            assertThat(length).isEqualTo(SendRequestAccessor.ELEMENT_SIZE + ScatterGatherAccessor.ELEMENT_SIZE + payloadLength);
+        }, 1);
+
+        buffer.commitRead(bytes);
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testChainClaim() {
+        var buffer = new RequestBuffer(MemoryAlignment.PAGE.value());
+
+        var index = buffer.tryClaimChain(3);
+        buffer.commitWrite(index);
+
+        var expectedSize = BitUtil.align(HEADER_LENGTH + RequestBuffer.CHAIN_ELEMENT_SIZE * 3, ALIGNMENT);
+        assertThat(buffer.size()).isEqualTo(expectedSize);
+
+        // Chains are never split between reads
+        assertThat(buffer.read((type, data, offset, length) -> {}, 2)).isEqualTo(0);
+
+        var bytes = buffer.read((type, data, offset, length) -> {
+            assertThat(type).isEqualTo(3);
+            assertThat(length).isEqualTo(RequestBuffer.CHAIN_ELEMENT_SIZE * 3);
+        }, 3);
+
+        buffer.commitRead(bytes);
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAbort() {
+        var buffer = new RequestBuffer(MemoryAlignment.PAGE.value());
+
+        buffer.abort(buffer.tryClaim(1));
+        var index = buffer.tryClaim(1);
+        SendRequestAccessor.setId(buffer.memoryAddress() + index, 42);
+        buffer.commitWrite(index);
+
+        // Aborted records are skipped
+        var request = new SendWorkRequest();
+        var bytes = buffer.read((type, data, offset, length) -> {
+            request.wrap(data.addressOffset() + offset);
+            assertThat(request.getId()).isEqualTo(42);
+        }, 1);
+
+        buffer.commitRead(bytes);
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+}
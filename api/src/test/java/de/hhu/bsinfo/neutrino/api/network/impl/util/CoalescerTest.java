@@ -0,0 +1,53 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalescerTest {
+
+    @Test
+    public void testFraming() {
+        var coalescer = new Coalescer(64);
+        var buffer = new UnsafeBuffer(new byte[64]);
+        var message = MemoryUtil.allocateAligned(8, MemoryAlignment.CACHE);
+        message.putLong(0, 42);
+
+        coalescer.start(buffer, 7, 0);
+        coalescer.append(message.addressOffset(), 8, 1);
+        coalescer.append(message.addressOffset(), 4, 2);
+
+        assertThat(coalescer.count()).isEqualTo(2);
+        assertThat(coalescer.length()).isEqualTo(2 * Coalescer.FRAME_HEADER_SIZE + 12);
+        assertThat(buffer.getShort(0)).isEqualTo((short) 8);
+        assertThat(buffer.getLong(Coalescer.FRAME_HEADER_SIZE)).isEqualTo(42);
+        assertThat(buffer.getShort(Coalescer.FRAME_HEADER_SIZE + 8)).isEqualTo((short) 4);
+        assertThat(Coalescer.getId(buffer, 0)).isEqualTo(1);
+        assertThat(Coalescer.getId(buffer, 1)).isEqualTo(2);
+    }
+
+    @Test
+    public void testLimit() {
+        var coalescer = new Coalescer(32);
+        var buffer = new UnsafeBuffer(new byte[40]);
+        var message = MemoryUtil.allocateAligned(16, MemoryAlignment.CACHE);
+
+        coalescer.start(buffer, 0, 0);
+        assertThat(coalescer.fits(14)).isTrue();
+        coalescer.append(message.addressOffset(), 14, 0);
+
+        // The next message would exceed the limit
+        assertThat(coalescer.fits(15)).isFalse();
+        assertThat(coalescer.fits(14)).isTrue();
+
+        // Identifiers stored at the buffer's end must not overlap with messages
+        coalescer.append(message.addressOffset(), 14, 1);
+        assertThat(coalescer.fits(0)).isFalse();
+
+        coalescer.reset();
+        assertThat(coalescer.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,53 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionTableTest {
+
+    @Test
+    public void testGrow() {
+        var table = new ConnectionTable<Integer>();
+
+        for (int i = 0; i < 10_000; i++) {
+            var handle = table.allocate();
+            table.set(handle, i);
+        }
+
+        assertThat(table.size()).isEqualTo(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(table.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testStaleHandle() {
+        var table = new ConnectionTable<String>();
+
+        var first = table.allocate();
+        table.set(first, "first");
+        assertThat(table.remove(first)).isEqualTo("first");
+        assertThat(table.get(first)).isNull();
+
+        // The slot is reused with a new generation
+        var second = table.allocate();
+        table.set(second, "second");
+        assertThat(second).isNotEqualTo(first);
+        assertThat(table.get(first)).isNull();
+        assertThat(table.get(second)).isEqualTo("second");
+
+        // Removing using the stale handle must not affect the new connection
+        assertThat(table.remove(first)).isNull();
+        assertThat(table.get(second)).isEqualTo("second");
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnknownHandle() {
+        var table = new ConnectionTable<String>();
+
+        assertThat(table.get(42)).isNull();
+        assertThat(table.remove(42)).isNull();
+    }
+}
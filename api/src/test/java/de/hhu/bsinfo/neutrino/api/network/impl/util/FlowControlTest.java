@@ -0,0 +1,68 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlowControlTest {
+
+    @Test
+    public void testConsume() {
+        var buffer = new UnsafeBuffer(new byte[FlowControl.SIZE]);
+        var flowControl = new FlowControl(buffer, 8);
+
+        assertThat(flowControl.available()).isEqualTo(8);
+        flowControl.consume(8);
+        assertThat(flowControl.available()).isEqualTo(0);
+
+        // The remote grants credits by overwriting the total number of granted credits
+        buffer.putLong(0, 12);
+        assertThat(flowControl.available()).isEqualTo(4);
+    }
+
+    @Test
+    public void testGrant() {
+        var flowControl = new FlowControl(new UnsafeBuffer(new byte[FlowControl.SIZE]), 8);
+
+        flowControl.onReceived();
+        assertThat(flowControl.shouldGrant()).isFalse();
+        flowControl.onReceived();
+        assertThat(flowControl.shouldGrant()).isTrue();
+        assertThat(flowControl.pollGrant()).isEqualTo(0);
+
+        flowControl.grant();
+        assertThat(flowControl.shouldGrant()).isFalse();
+        assertThat(flowControl.pollGrant()).isEqualTo(10);
+        assertThat(flowControl.pollGrant()).isEqualTo(0);
+    }
+
+    @Test
+    public void testChainLargerThanInitialCredits() {
+        var buffer = new UnsafeBuffer(new byte[FlowControl.SIZE]);
+        var flowControl = new FlowControl(buffer, 8);
+
+        // A chain requiring more credits than granted initially could never acquire them
+        var maxMessageSize = FlowControl.maxMessageSize(8, 4096);
+        assertThat(maxMessageSize).isEqualTo(8 * 4096);
+        assertThat(fragments(maxMessageSize + 1, 4096)).isGreaterThan(flowControl.available());
+
+        // The largest permitted chain consumes all credits and becomes sendable again once the remote grants them
+        flowControl.consume((int) fragments(maxMessageSize, 4096));
+        assertThat(flowControl.available()).isEqualTo(0);
+        buffer.putLong(0, 16);
+        assertThat(flowControl.available()).isEqualTo(fragments(maxMessageSize, 4096));
+    }
+
+    private static long fragments(long length, int fragmentSize) {
+        return (length + fragmentSize - 1) / fragmentSize;
+    }
+
+    @Test
+    public void testDisabled() {
+        var flowControl = new FlowControl(null, 0);
+
+        assertThat(flowControl.isEnabled()).isFalse();
+        assertThat(flowControl.available()).isEqualTo(Long.MAX_VALUE);
+    }
+}
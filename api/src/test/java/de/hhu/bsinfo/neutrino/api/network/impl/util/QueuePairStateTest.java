@@ -0,0 +1,69 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueuePairStateTest {
+
+    @Test
+    public void testSignalInterval() {
+        var state = new QueuePairState(16, 4);
+
+        for (int i = 1; i <= 8; i++) {
+            assertThat(state.add(i)).isEqualTo(i % 4 == 0);
+        }
+
+        assertThat(state.getPending()).isEqualTo(8);
+        assertThat(state.remaining()).isEqualTo(8);
+    }
+
+    @Test
+    public void testRetireInOrder() {
+        var state = new QueuePairState(4, 4);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                state.add(round * 4 + i);
+            }
+
+            state.markSignaled();
+            assertThat(state.remaining()).isEqualTo(0);
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(state.poll()).isEqualTo(round * 4 + i);
+            }
+
+            assertThat(state.hasPending()).isFalse();
+        }
+    }
+
+    @Test
+    public void testRetireDuplicateIdentifiers() {
+        var state = new QueuePairState(4, 4);
+
+        // Both requests carry the same identifier, but are stored at different positions
+        var first = state.nextPosition();
+        state.add(42);
+        var second = state.nextPosition();
+        state.add(42);
+        assertThat(first).isNotEqualTo(second);
+
+        // Completing the first request must not retire the second one
+        var retired = 0;
+        while (state.isPending(first)) {
+            assertThat(state.poll()).isEqualTo(42);
+            retired++;
+        }
+
+        assertThat(retired).isEqualTo(1);
+        assertThat(state.isPending(second)).isTrue();
+
+        // A duplicate completion for the first request is ignored
+        assertThat(state.isPending(first)).isFalse();
+
+        assertThat(state.poll()).isEqualTo(42);
+        assertThat(state.isPending(second)).isFalse();
+        assertThat(state.hasPending()).isFalse();
+    }
+}
@@ -0,0 +1,51 @@
+package de.hhu.bsinfo.neutrino.api.network.impl.util;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReassemblyTest {
+
+    @Test
+    public void testReassemble() {
+        var reassembly = new Reassembly();
+        var fragment = new UnsafeBuffer(new byte[4]);
+
+        for (int i = 0; i < 3; i++) {
+            fragment.setMemory(0, fragment.capacity(), (byte) i);
+            assertThat(reassembly.append(fragment, i < 2 ? 4 : 2, 10)).isEqualTo(i == 2);
+        }
+
+        assertThat(reassembly.inProgress()).isFalse();
+        assertThat(reassembly.length()).isEqualTo(10);
+        assertThat(reassembly.buffer().getByte(0)).isEqualTo((byte) 0);
+        assertThat(reassembly.buffer().getByte(4)).isEqualTo((byte) 1);
+        assertThat(reassembly.buffer().getByte(9)).isEqualTo((byte) 2);
+    }
+
+    @Test
+    public void testReuseBuffer() {
+        var reassembly = new Reassembly();
+        var fragment = new UnsafeBuffer(new byte[8]);
+
+        assertThat(reassembly.append(fragment, 8, 8)).isTrue();
+        var buffer = reassembly.buffer();
+
+        assertThat(reassembly.append(fragment, 4, 8)).isFalse();
+        assertThat(reassembly.inProgress()).isTrue();
+        assertThat(reassembly.append(fragment, 4, 8)).isTrue();
+        assertThat(reassembly.buffer()).isSameAs(buffer);
+    }
+
+    @Test
+    public void testOverflow() {
+        var reassembly = new Reassembly();
+        var fragment = new UnsafeBuffer(new byte[8]);
+
+        assertThat(reassembly.append(fragment, 4, 6)).isFalse();
+        assertThatThrownBy(() -> reassembly.append(fragment, 4, 6)).isInstanceOf(IllegalStateException.class);
+        assertThat(reassembly.inProgress()).isFalse();
+    }
+}
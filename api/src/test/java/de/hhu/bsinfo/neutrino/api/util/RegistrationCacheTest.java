@@ -0,0 +1,200 @@
+package de.hhu.bsinfo.neutrino.api.util;
+
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.verbs.AccessFlag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RegistrationCacheTest {
+
+    private static final long GRANULARITY = 4L * MemoryAlignment.PAGE.value();
+
+    private static final long BASE = 1L << 32;
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 4 * GRANULARITY, AccessFlag.LOCAL_WRITE);
+
+        // Misses register the whole granule, so that neighbouring buffers hit the same region
+        var first = cache.acquire(BASE + 64, 128);
+        var second = cache.acquire(BASE + 1024, 128);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(second.localKey()).isEqualTo(first.localKey());
+        assertThat(registrator.registrations).hasSize(1);
+        assertThat(registrator.registrations.get(0).start).isEqualTo(BASE);
+        assertThat(registrator.registrations.get(0).length).isEqualTo(GRANULARITY);
+
+        // Memory outside the granule requires a new region
+        var third = cache.acquire(BASE + GRANULARITY, 128);
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(third.localKey()).isNotEqualTo(first.localKey());
+        assertThat(cache.getPinnedBytes()).isEqualTo(2 * GRANULARITY);
+
+        first.release();
+        assertThatThrownBy(first::release).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 2 * GRANULARITY, AccessFlag.LOCAL_WRITE);
+
+        cache.acquire(granule(0), 64).release();
+        cache.acquire(granule(1), 64).release();
+
+        // Touching the first region makes the second one the least recently used
+        cache.acquire(granule(0), 64).release();
+        cache.acquire(granule(2), 64).release();
+
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getPinnedBytes()).isEqualTo(2 * GRANULARITY);
+        assertThat(registrator.registrations.get(0).closed).isFalse();
+        assertThat(registrator.registrations.get(1).closed).isTrue();
+        assertThat(registrator.registrations.get(2).closed).isFalse();
+
+        // The evicted region is registered again on its next use
+        cache.acquire(granule(1), 64).release();
+        assertThat(registrator.registrations).hasSize(4);
+    }
+
+    @Test
+    public void testInUseRegionsAreNotEvicted() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 2 * GRANULARITY, AccessFlag.LOCAL_WRITE);
+
+        var first = cache.acquire(granule(0), 64);
+        var second = cache.acquire(granule(1), 64);
+        var third = cache.acquire(granule(2), 64);
+
+        // The capacity is exceeded temporarily, since all regions are in use
+        assertThat(cache.getEvictions()).isEqualTo(0);
+        assertThat(cache.getPinnedBytes()).isEqualTo(3 * GRANULARITY);
+        assertThat(registrator.registrations).noneMatch(registration -> registration.closed);
+
+        // Regions are evicted as soon as they are no longer in use
+        first.release();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(registrator.registrations.get(0).closed).isTrue();
+        assertThat(cache.getPinnedBytes()).isEqualTo(2 * GRANULARITY);
+
+        second.release();
+        third.release();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReplacedRegionInUse() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 4 * GRANULARITY, AccessFlag.LOCAL_WRITE);
+
+        // A range crossing the first region's end registers a larger region covering it
+        var old = cache.acquire(granule(0), 64);
+        var crossing = cache.acquire(granule(1) - 64, 128);
+        assertThat(registrator.registrations).hasSize(2);
+        assertThat(registrator.registrations.get(1).length).isEqualTo(2 * GRANULARITY);
+
+        // The replaced region stays registered while in use, but is no longer returned by lookups
+        assertThat(registrator.registrations.get(0).closed).isFalse();
+        var replacement = cache.acquire(granule(0), 64);
+        assertThat(replacement.localKey()).isEqualTo(crossing.localKey());
+        assertThat(old.localKey()).isNotEqualTo(crossing.localKey());
+
+        old.release();
+        assertThat(registrator.registrations.get(0).closed).isTrue();
+        assertThat(registrator.registrations.get(1).closed).isFalse();
+        assertThat(cache.getPinnedBytes()).isEqualTo(2 * GRANULARITY);
+
+        crossing.release();
+        replacement.release();
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 4 * GRANULARITY, AccessFlag.LOCAL_WRITE);
+
+        cache.acquire(granule(0), 64).release();
+        var inUse = cache.acquire(granule(1), 64);
+
+        // Unused regions are deregistered immediately, regions in use once they are released
+        cache.invalidate(granule(0) + 128, 2 * GRANULARITY);
+        assertThat(registrator.registrations.get(0).closed).isTrue();
+        assertThat(registrator.registrations.get(1).closed).isFalse();
+
+        inUse.release();
+        assertThat(registrator.registrations.get(1).closed).isTrue();
+        assertThat(cache.getPinnedBytes()).isEqualTo(0);
+
+        // Invalidated memory is registered again on its next use
+        cache.acquire(granule(0), 64).release();
+        assertThat(cache.getMisses()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRemoteAccessUsesPageGranularity() throws Exception {
+        var registrator = new FakeRegistrator();
+        var cache = new RegistrationCache(registrator, GRANULARITY, 4 * GRANULARITY, AccessFlag.LOCAL_WRITE, AccessFlag.REMOTE_READ);
+
+        cache.acquire(BASE + 64, 128).release();
+        assertThat(registrator.registrations.get(0).length).isEqualTo(MemoryAlignment.PAGE.value());
+    }
+
+    private static long granule(int index) {
+        return BASE + index * GRANULARITY;
+    }
+
+    private static final class FakeRegistrator implements RegistrationCache.Registrator {
+
+        private final List<FakeRegistration> registrations = new ArrayList<>();
+
+        @Override
+        public RegistrationCache.Registration register(long address, long length, AccessFlag... accessFlags) {
+            var registration = new FakeRegistration(address, length, registrations.size() + 1);
+            registrations.add(registration);
+            return registration;
+        }
+    }
+
+    private static final class FakeRegistration implements RegistrationCache.Registration {
+
+        private final long start;
+
+        private final long length;
+
+        private final int key;
+
+        private boolean closed;
+
+        private FakeRegistration(long start, long length, int key) {
+            this.start = start;
+            this.length = length;
+            this.key = key;
+        }
+
+        @Override
+        public int getLocalKey() {
+            return key;
+        }
+
+        @Override
+        public int getRemoteKey() {
+            return key;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                throw new IllegalStateException("Region was already deregistered");
+            }
+
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.hhu.bsinfo.neutrino.benchmark;
+
+import de.hhu.bsinfo.neutrino.api.network.impl.buffer.BufferPool;
+import de.hhu.bsinfo.neutrino.util.NativeLibrary;
+import de.hhu.bsinfo.neutrino.verbs.Context;
+import de.hhu.bsinfo.neutrino.verbs.ProtectionDomain;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares claim/release throughput of the shared buffer pool (shard size 0)
+ * against the sharded buffer pool. Run with 1, 2, 4, 8, 16, 32 and 64 threads
+ * (e.g. {@code -t 16}) to observe contention on the shared queue.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BufferPoolBenchmark {
+
+    static { NativeLibrary.load("neutrino"); }
+
+    private static final int BUFFER_COUNT = 128 << 8;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int BATCH_SIZE = 32;
+
+    @State(Scope.Benchmark)
+    public static class PoolState {
+
+        @Param({"0", "64", "256"})
+        public int shardSize;
+
+        private Context context;
+
+        private ProtectionDomain protectionDomain;
+
+        private BufferPool pool;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws IOException {
+            context = Context.openDevice(0);
+            protectionDomain = context.allocateProtectionDomain();
+            pool = new BufferPool(protectionDomain::registerMemoryRegion, BUFFER_COUNT, BUFFER_SIZE, shardSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws IOException {
+            protectionDomain.close();
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        private final BufferPool.PooledBuffer[] buffers = new BufferPool.PooledBuffer[BATCH_SIZE];
+    }
+
+    @Benchmark
+    public void claimRelease(PoolState state) {
+        var buffer = state.pool.claim();
+        state.pool.release(buffer.getIdentifier());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void claimReleaseBatch(PoolState state, BatchState batch) {
+        var pool = state.pool;
+        var buffers = batch.buffers;
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            buffers[i] = pool.claim();
+        }
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            pool.release(buffers[i].getIdentifier());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.hhu.bsinfo.neutrino.benchmark;
+
+import de.hhu.bsinfo.neutrino.api.network.impl.util.ConnectionTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures connection lookups while another thread keeps adding and
+ * removing connections, forcing the table to grow and recycle handles.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionTableBenchmark {
+
+    private static final int CHURN_LIMIT = 1 << 16;
+
+    @State(Scope.Group)
+    public static class TableState {
+
+        @Param({"1024", "16384"})
+        public int connections;
+
+        private ConnectionTable<Object> table;
+
+        private int[] handles;
+
+        @Setup(Level.Iteration)
+        public void doSetup() {
+            table = new ConnectionTable<>();
+            handles = new int[connections];
+            for (int i = 0; i < connections; i++) {
+                handles[i] = table.allocate();
+                table.set(handles[i], new Object());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ChurnState {
+
+        private final int[] handles = new int[CHURN_LIMIT];
+
+        private int count;
+    }
+
+    @Benchmark
+    @Group("lookup")
+    @GroupThreads(3)
+    public void get(TableState state, Blackhole blackhole) {
+        var handles = state.handles;
+        blackhole.consume(state.table.get(handles[ThreadLocalRandom.current().nextInt(handles.length)]));
+    }
+
+    @Benchmark
+    @Group("lookup")
+    @GroupThreads(1)
+    public void churn(TableState state, ChurnState churn) {
+        var table = state.table;
+
+        // Grow the table until the limit is reached and shrink it afterwards
+        if (churn.count < CHURN_LIMIT) {
+            var handle = table.allocate();
+            table.set(handle, churn);
+            churn.handles[churn.count++] = handle;
+        } else {
+            while (churn.count > 0) {
+                table.remove(churn.handles[--churn.count]);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.hhu.bsinfo.neutrino.benchmark;
+
+import de.hhu.bsinfo.neutrino.api.util.MemoryUtil;
+import de.hhu.bsinfo.neutrino.api.util.RegistrationCache;
+import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
+import de.hhu.bsinfo.neutrino.util.NativeLibrary;
+import de.hhu.bsinfo.neutrino.verbs.AccessFlag;
+import de.hhu.bsinfo.neutrino.verbs.Context;
+import de.hhu.bsinfo.neutrino.verbs.ProtectionDomain;
+import org.agrona.concurrent.AtomicBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares registering memory for each transfer against acquiring it from the registration cache.
+ * Buffers are picked randomly from an arena, either uniformly or with most accesses hitting a small
+ * hot set. Arenas larger than the cache's capacity force evictions.
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RegistrationCacheBenchmark {
+
+    static { NativeLibrary.load("neutrino"); }
+
+    private static final AccessFlag[] ACCESS_FLAGS = { AccessFlag.LOCAL_WRITE, AccessFlag.REMOTE_READ, AccessFlag.REMOTE_WRITE };
+
+    private static final long CACHE_CAPACITY = 16 * 1024 * 1024;
+
+    /**
+     * The percentage of accesses hitting the hot set with the hotspot pattern.
+     */
+    private static final int HOT_ACCESSES = 90;
+
+    /**
+     * The percentage of buffers belonging to the hot set with the hotspot pattern.
+     */
+    private static final int HOT_BUFFERS = 10;
+
+    public enum Pattern {
+        UNIFORM, HOTSPOT
+    }
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param({"4096", "65536"})
+        public int bufferSize;
+
+        @Param({"4194304", "67108864"})
+        public int arenaSize;
+
+        @Param({"4096", "1048576"})
+        public long granularity;
+
+        @Param({"UNIFORM", "HOTSPOT"})
+        public Pattern pattern;
+
+        private Context context;
+
+        private ProtectionDomain protectionDomain;
+
+        private AtomicBuffer arena;
+
+        private RegistrationCache cache;
+
+        private int bufferCount;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws IOException {
+            context = Context.openDevice(0);
+            protectionDomain = context.allocateProtectionDomain();
+            arena = MemoryUtil.allocateAligned(arenaSize, MemoryAlignment.PAGE);
+            cache = new RegistrationCache(RegistrationCache.memoryRegions(protectionDomain::registerMemoryRegion), granularity, CACHE_CAPACITY, ACCESS_FLAGS);
+            bufferCount = arenaSize / bufferSize;
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws IOException {
+            System.out.printf("%nhits: %d, misses: %d, evictions: %d, registration time: %d ns%n",
+                    cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getRegistrationTime());
+
+            cache.close();
+            protectionDomain.close();
+            context.close();
+        }
+
+        private long nextAddress() {
+            var random = ThreadLocalRandom.current();
+            var hotCount = Math.max(1, bufferCount * HOT_BUFFERS / 100);
+            var index = pattern == Pattern.HOTSPOT && random.nextInt(100) < HOT_ACCESSES
+                    ? random.nextInt(hotCount)
+                    : random.nextInt(bufferCount);
+
+            return arena.addressOffset() + (long) index * bufferSize;
+        }
+    }
+
+    @Benchmark
+    public int registerPerTransfer(CacheState state) throws IOException {
+        var region = state.protectionDomain.registerMemoryRegion(state.nextAddress(), state.bufferSize, ACCESS_FLAGS);
+        var localKey = region.getLocalKey();
+        region.close();
+        return localKey;
+    }
+
+    @Benchmark
+    public int acquireCached(CacheState state) throws Exception {
+        var buffer = state.cache.acquire(state.nextAddress(), state.bufferSize);
+        var localKey = buffer.localKey();
+        buffer.release();
+        return localKey;
+    }
+}
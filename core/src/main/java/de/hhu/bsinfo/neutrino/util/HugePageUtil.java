@@ -0,0 +1,72 @@
+package de.hhu.bsinfo.neutrino.util;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+public final class HugePageUtil {
+
+    /**
+     * The size of a huge page on x86-64 and the default huge page size on most other architectures.
+     */
+    public static final int HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    private static final long MAP_FAILED = -1;
+
+    /**
+     * Unmaps memory once the buffer referencing it becomes unreachable, like direct buffers allocated by the JVM.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private HugePageUtil() {}
+
+    /**
+     * Allocates memory backed by huge pages reserved within the kernel's huge page pool (see
+     * /proc/sys/vm/nr_hugepages). The buffer's capacity is rounded up to a multiple of the huge page size.
+     */
+    public static ByteBuffer allocateHugeTlb(int size) {
+        var length = align(size);
+        var address = mapHugeTlb0(length);
+        if (address == MAP_FAILED) {
+            throw new IllegalStateException("Mapping " + length + " bytes of huge pages failed", SystemUtil.lastError());
+        }
+
+        return wrap(address, length);
+    }
+
+    /**
+     * Allocates memory aligned to the huge page size and advises the kernel to back it with transparent
+     * huge pages. The kernel may still use regular pages, e.g. if transparent huge pages are disabled
+     * or memory is fragmented. The buffer's capacity is rounded up to a multiple of the huge page size.
+     */
+    public static ByteBuffer allocateTransparent(int size) {
+        var length = align(size);
+        var address = mapTransparent0(length);
+        if (address == MAP_FAILED) {
+            throw new IllegalStateException("Mapping " + length + " bytes of memory failed", SystemUtil.lastError());
+        }
+
+        return wrap(address, length);
+    }
+
+    private static int align(int size) {
+        if (size <= 0 || size > Integer.MAX_VALUE - HUGE_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be positive and leave room for rounding");
+        }
+
+        return (size + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+    }
+
+    private static ByteBuffer wrap(long address, int length) {
+        var buffer = wrap0(address, length);
+        CLEANER.register(buffer, () -> unmap0(address, length));
+        return buffer;
+    }
+
+    private static native long mapHugeTlb0(long length);
+
+    private static native long mapTransparent0(long length);
+
+    private static native int unmap0(long address, long length);
+
+    private static native ByteBuffer wrap0(long address, int size);
+}
@@ -1,9 +1,10 @@
 package de.hhu.bsinfo.neutrino.util;
 
 public enum MemoryAlignment {
-    TYPE    (0x0008),
-    CACHE   (0x0040),
-    PAGE    (0x1000);
+    TYPE      (0x0008),
+    CACHE     (0x0040),
+    PAGE      (0x1000),
+    HUGE_PAGE (0x200000);
 
     private final int alignment;
 
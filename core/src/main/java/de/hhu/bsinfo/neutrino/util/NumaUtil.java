@@ -0,0 +1,112 @@
+package de.hhu.bsinfo.neutrino.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+public final class NumaUtil {
+
+    private static final int STATUS_OK = 0;
+
+    /**
+     * Returned if the NUMA node is unknown (e.g. on single-socket machines).
+     */
+    public static final int UNKNOWN_NODE = -1;
+
+    /**
+     * The maximum number of NUMA nodes supported when binding memory.
+     */
+    private static final int MAX_NODES = Long.SIZE;
+
+    private static final String DEVICE_NODE_PATH = "/sys/class/infiniband/%s/device/numa_node";
+
+    private static final String NODE_CPUS_PATH = "/sys/devices/system/node/node%d/cpulist";
+
+    private NumaUtil() {}
+
+    /**
+     * Returns the NUMA node the Infiniband device with the specified name is attached to.
+     */
+    public static int getDeviceNode(String deviceName) {
+        try {
+            var node = Integer.parseInt(Files.readString(Path.of(String.format(DEVICE_NODE_PATH, deviceName))).trim());
+            return node < 0 ? UNKNOWN_NODE : node;
+        } catch (IOException | NumberFormatException e) {
+            return UNKNOWN_NODE;
+        }
+    }
+
+    /**
+     * Returns all CPUs belonging to the specified NUMA node or an empty set if they are unknown.
+     */
+    public static BitSet getNodeCpus(int node) {
+        if (node == UNKNOWN_NODE) {
+            return new BitSet();
+        }
+
+        try {
+            return parseCpuList(Files.readString(Path.of(String.format(NODE_CPUS_PATH, node))));
+        } catch (IOException | IllegalArgumentException e) {
+            return new BitSet();
+        }
+    }
+
+    /**
+     * Parses a CPU list in the format used by the Linux kernel (e.g. "0-3,8,10-11").
+     */
+    public static BitSet parseCpuList(String cpuList) {
+        var cpus = new BitSet();
+        for (var range : cpuList.trim().split(",")) {
+            if (range.isBlank()) {
+                continue;
+            }
+
+            try {
+                var separator = range.indexOf('-');
+                var first = Integer.parseInt(range.substring(0, separator == -1 ? range.length() : separator).trim());
+                var last = separator == -1 ? first : Integer.parseInt(range.substring(separator + 1).trim());
+                if (first < 0 || last < first) {
+                    throw new IllegalArgumentException("Invalid CPU range " + range);
+                }
+
+                cpus.set(first, last + 1);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CPU range " + range, e);
+            }
+        }
+
+        return cpus;
+    }
+
+    /**
+     * Restricts the calling thread to the specified CPUs.
+     */
+    public static void setAffinity(BitSet cpus) {
+        if (setAffinity0(cpus.toLongArray()) != STATUS_OK) {
+            throw new IllegalArgumentException("Setting CPU affinity failed", SystemUtil.lastError());
+        }
+    }
+
+    /**
+     * Binds all pages overlapping the specified memory range to the NUMA node. Pages which were
+     * already touched are moved to the node. Must be called before the memory gets registered,
+     * since registered pages are pinned and can no longer be moved.
+     */
+    public static void bind(long address, long length, int node) {
+        if (node < 0 || node >= MAX_NODES) {
+            throw new IllegalArgumentException("NUMA node " + node + " is not supported");
+        }
+
+        var pageSize = MemoryAlignment.PAGE.value();
+        var start = address & -pageSize;
+        var end = (address + length + pageSize - 1) & -pageSize;
+        if (bind0(start, end - start, 1L << node) != STATUS_OK) {
+            throw new IllegalArgumentException("Binding memory to NUMA node " + node + " failed", SystemUtil.lastError());
+        }
+    }
+
+    private static native int setAffinity0(long[] cpus);
+
+    private static native int bind0(long address, long length, long nodeMask);
+}
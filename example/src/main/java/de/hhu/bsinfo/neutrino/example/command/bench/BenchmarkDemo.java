@@ -3,6 +3,7 @@ package de.hhu.bsinfo.neutrino.example.command.bench;
 import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
 import de.hhu.bsinfo.neutrino.api.network.NetworkHandler;
 import de.hhu.bsinfo.neutrino.api.network.NetworkService;
+import de.hhu.bsinfo.neutrino.api.network.StripedChannel;
 import de.hhu.bsinfo.neutrino.api.util.DefaultNegotiator;
 import de.hhu.bsinfo.neutrino.verbs.Mtu;
 import lombok.extern.slf4j.Slf4j;
@@ -10,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -81,6 +83,22 @@ public abstract class BenchmarkDemo implements Runnable, NetworkHandler {
         }
     }
 
+    /**
+     * Establishes a single channel striped across the specified number of lanes. The server
+     * accepts each lane as a separate connection, since it only receives messages.
+     */
+    protected final StripedChannel connect(int lanes) throws IOException {
+        return networkService.connect(lane -> localInfo -> {
+
+            // Each lane exchanges its queue pair information using its own socket, which is closed afterwards
+            try (var socket = new Socket(serverAddress.getAddress(), serverAddress.getPort())) {
+                return DefaultNegotiator.fromSocket(socket).exchange(localInfo);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, this, Mtu.MTU_4096, lanes);
+    }
+
     private void startServer() {
         log.info("Waiting for incoming connections on port {}", port);
 
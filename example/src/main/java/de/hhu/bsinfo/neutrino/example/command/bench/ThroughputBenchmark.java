@@ -2,6 +2,7 @@ package de.hhu.bsinfo.neutrino.example.command.bench;
 
 import de.hhu.bsinfo.neutrino.api.network.InfinibandChannel;
 import de.hhu.bsinfo.neutrino.api.network.NetworkHandler;
+import de.hhu.bsinfo.neutrino.api.network.StripedChannel;
 import de.hhu.bsinfo.neutrino.example.util.Result;
 import de.hhu.bsinfo.neutrino.util.MemoryAlignment;
 import de.hhu.bsinfo.neutrino.util.MemoryUtil;
@@ -17,6 +18,7 @@ import picocli.CommandLine;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ThreadLocalRandom;
@@ -60,6 +62,16 @@ public class ThroughputBenchmark extends BenchmarkDemo {
             description = "The number of messages.")
     private long messageCount = DEFAULT_MESSAGE_COUNT;
 
+    @CommandLine.Option(
+            names = "--coalescing",
+            description = "Compares throughput with and without send coalescing for small messages.")
+    private boolean compareCoalescing;
+
+    @CommandLine.Option(
+            names = "--lanes",
+            description = "Compares throughput of a single channel striped across 1, 2, 4 and 8 lanes.")
+    private boolean compareLanes;
+
     @CommandLine.Option(
             names = "--output",
             description = "The output file.")
@@ -69,7 +81,11 @@ public class ThroughputBenchmark extends BenchmarkDemo {
 
     private static final int[] SIZES = { 16, 32, 64, 128, 256, 512, 1024, 2048, 4096 };
 
-    private static final String CSV_HEADER = "size,messages,iteration,duration\n";
+    private static final int[] COALESCING_SIZES = { 16, 32, 64, 128, 256, 512 };
+
+    private static final int[] LANES = { 1, 2, 4, 8 };
+
+    private static final String CSV_HEADER = "size,messages,coalescing,lanes,iteration,duration\n";
 
     private static final AtomicLong warmupCounter = new AtomicLong();
     private static final AtomicLong iterationCounter = new AtomicLong();
@@ -83,48 +99,74 @@ public class ThroughputBenchmark extends BenchmarkDemo {
             writer.append(CSV_HEADER);
 
             // Only iterate through all message sizes if no size was set explicitly
-            var sizes = messageSize != DEFAULT_MESSAGE_SIZE ? new int[]{messageSize} : SIZES;
+            var sizes = messageSize != DEFAULT_MESSAGE_SIZE ? new int[]{messageSize} : compareCoalescing ? COALESCING_SIZES : SIZES;
             for (var messageSize : sizes) {
 
-                // Create data buffer
-                final var bytes = new byte[messageSize];
-                final var data = MemoryUtil.allocateAligned(messageSize, MemoryAlignment.CACHE);
-                ThreadLocalRandom.current().nextBytes(bytes);
-                data.putBytes(0, bytes);
-
-                var channelCount = channels.size();
-
-                // Create benchmark threads
-                var threads = channels.stream()
-                        .map(channel -> new BenchmarkThread(channel, data, warmups, iterations, messageCount / channelCount, writer, messageCount))
-                        .toArray(BenchmarkThread[]::new);
-
-                log.info("Starting benchmark with message size {}B and {} producer threads", messageSize, channelCount);
+                // Use one producer per lane, each sending its own ordered stream over the same striped channel
+                if (compareLanes) {
+                    for (var lanes : LANES) {
+                        var channel = connect(lanes);
+                        runBenchmark(List.of(channel), lanes, writer, messageSize, false);
+                        channel.disconnect();
+                    }
 
-                // Start benchmark threads
-                for (BenchmarkThread thread : threads) {
-                    thread.start();
+                    continue;
                 }
 
-                // Wait for all benchmark threads to finish
-                for (BenchmarkThread thread : threads) {
-                    try {
-                        thread.join();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+                var striped = new ArrayList<StripedChannel>();
+                channels.forEach(channel -> striped.add(new StripedChannel(List.of(channel))));
+                runBenchmark(striped, 1, writer, messageSize, false);
 
-                writer.flush();
-                requestCounter.set(0);
-                iterationCounter.set(0);
-                warmupCounter.set(0);
+                // Repeat the benchmark with coalescing enabled on all channels
+                if (compareCoalescing) {
+                    channels.forEach(channel -> channel.setCoalescing(true));
+                    runBenchmark(striped, 1, writer, messageSize, true);
+                    channels.forEach(channel -> channel.setCoalescing(false));
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private void runBenchmark(List<StripedChannel> channels, int streams, FileWriter writer, int messageSize, boolean coalescing) throws IOException {
+
+        // Create data buffer
+        final var bytes = new byte[messageSize];
+        final var data = MemoryUtil.allocateAligned(messageSize, MemoryAlignment.CACHE);
+        ThreadLocalRandom.current().nextBytes(bytes);
+        data.putBytes(0, bytes);
+
+        var threadCount = channels.size() * streams;
+
+        // Create benchmark threads, the first one being responsible for writing results
+        var threads = new BenchmarkThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new BenchmarkThread(channels.get(i / streams), i % streams, data, warmups, iterations, messageCount / threadCount, writer, messageCount, coalescing, i == 0);
+        }
+
+        log.info("Starting benchmark with message size {}B, {} producer threads and {} lanes per channel (coalescing {})", messageSize, threadCount, channels.get(0).getLaneCount(), coalescing ? "enabled" : "disabled");
+
+        // Start benchmark threads
+        for (BenchmarkThread thread : threads) {
+            thread.start();
+        }
+
+        // Wait for all benchmark threads to finish
+        for (BenchmarkThread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        writer.flush();
+        requestCounter.set(0);
+        iterationCounter.set(0);
+        warmupCounter.set(0);
+    }
+
     @Override
     public void onRequestCompleted(InfinibandChannel channel, int id) {
         if (requestCounter.incrementAndGet() == messageCount) {
@@ -148,7 +190,9 @@ public class ThroughputBenchmark extends BenchmarkDemo {
 
     private static final class BenchmarkThread extends Thread {
 
-        private final InfinibandChannel channel;
+        private final StripedChannel channel;
+
+        private final int streamKey;
 
         private final DirectBuffer data;
 
@@ -162,13 +206,20 @@ public class ThroughputBenchmark extends BenchmarkDemo {
 
         private final long totalMessages;
 
-        private BenchmarkThread(InfinibandChannel channel, DirectBuffer data, int warmups, int iterations, long count, FileWriter writer, long totalMessages) {
+        private final boolean coalescing;
+
+        private final boolean reporter;
+
+        private BenchmarkThread(StripedChannel channel, int streamKey, DirectBuffer data, int warmups, int iterations, long count, FileWriter writer, long totalMessages, boolean coalescing, boolean reporter) {
             this.channel = channel;
+            this.streamKey = streamKey;
             this.data = data;
             this.count = count;
             this.warmups = warmups;
             this.writer = writer;
             this.totalMessages = totalMessages;
+            this.coalescing = coalescing;
+            this.reporter = reporter;
             durations = new long[iterations];
         }
 
@@ -180,7 +231,7 @@ public class ThroughputBenchmark extends BenchmarkDemo {
 
                 // Send messages
                 for (long message = 0; message < count; message++) {
-                    channel.send(0, data, 0, data.capacity());
+                    channel.send(streamKey, 0, data, 0, data.capacity());
                 }
 
                 // Wait until all messages have been processed
@@ -194,7 +245,7 @@ public class ThroughputBenchmark extends BenchmarkDemo {
                 // Send messages
                 var startTime = System.nanoTime();
                 for (long message = 0; message < count; message++) {
-                    channel.send(0, data, 0, data.capacity());
+                    channel.send(streamKey, 0, data, 0, data.capacity());
                 }
 
                 // Wait until all messages have been processed
@@ -205,11 +256,13 @@ public class ThroughputBenchmark extends BenchmarkDemo {
                 // Record duration
                 var duration = System.nanoTime() - startTime;
 
-                // First channel is responsible for writing results
-                if (channel.getId() == 0) {
-                    writer.append(String.format(Locale.US, "%d,%d,%d,%.4f\n",
+                // Only one thread is responsible for writing results
+                if (reporter) {
+                    writer.append(String.format(Locale.US, "%d,%d,%b,%d,%d,%.4f\n",
                             data.capacity(),
                             totalMessages,
+                            coalescing,
+                            channel.getLaneCount(),
                             iteration,
                             duration / 1_000_000.0
                     ));
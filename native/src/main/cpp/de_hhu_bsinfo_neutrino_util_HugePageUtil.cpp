@@ -0,0 +1,56 @@
+#include <de_hhu_bsinfo_neutrino_util_HugePageUtil.h>
+#include <sys/mman.h>
+#include <cstdint>
+
+#define NEUTRINO_HUGE_PAGE_SIZE (2UL * 1024 * 1024)
+
+// Huge page size encoding from linux/mman.h, which is not available everywhere
+#ifndef MAP_HUGE_SHIFT
+#define MAP_HUGE_SHIFT 26
+#endif
+
+#define NEUTRINO_MAP_HUGE_2MB (21 << MAP_HUGE_SHIFT)
+
+#ifndef MADV_HUGEPAGE
+#define MADV_HUGEPAGE 14
+#endif
+
+JNIEXPORT jlong JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_mapHugeTlb0 (JNIEnv *env, jclass clazz, jlong length) {
+    auto address = mmap(nullptr, static_cast<size_t>(length), PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS | MAP_HUGETLB | NEUTRINO_MAP_HUGE_2MB, -1, 0);
+    return address == MAP_FAILED ? -1 : reinterpret_cast<jlong>(address);
+}
+
+JNIEXPORT jlong JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_mapTransparent0 (JNIEnv *env, jclass clazz, jlong length) {
+    auto size = static_cast<size_t>(length);
+
+    // Map an additional huge page, so that an aligned range of the requested length is always contained
+    auto mapped = mmap(nullptr, size + NEUTRINO_HUGE_PAGE_SIZE, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if (mapped == MAP_FAILED) {
+        return -1;
+    }
+
+    // Unmap the unaligned head and tail
+    auto start = reinterpret_cast<uintptr_t>(mapped);
+    auto aligned = (start + NEUTRINO_HUGE_PAGE_SIZE - 1) & ~(NEUTRINO_HUGE_PAGE_SIZE - 1);
+    if (aligned > start) {
+        munmap(mapped, aligned - start);
+    }
+
+    auto tail = start + size + NEUTRINO_HUGE_PAGE_SIZE - (aligned + size);
+    if (tail > 0) {
+        munmap(reinterpret_cast<void*>(aligned + size), tail);
+    }
+
+    // Transparent huge pages are only an optimization, so that failing to enable them is not an error
+    madvise(reinterpret_cast<void*>(aligned), size, MADV_HUGEPAGE);
+
+    return static_cast<jlong>(aligned);
+}
+
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_unmap0 (JNIEnv *env, jclass clazz, jlong address, jlong length) {
+    return munmap(reinterpret_cast<void*>(address), static_cast<size_t>(length));
+}
+
+JNIEXPORT jobject JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_wrap0 (JNIEnv *env, jclass clazz, jlong address, jint size) {
+    return env->NewDirectByteBuffer(reinterpret_cast<void*>(address), size);
+}
@@ -0,0 +1,38 @@
+#include <de_hhu_bsinfo_neutrino_util_NumaUtil.h>
+#include <sched.h>
+#include <unistd.h>
+#include <errno.h>
+#include <sys/syscall.h>
+
+// Memory policy constants from linux/mempolicy.h, which is not available everywhere
+#define NEUTRINO_MPOL_BIND 2
+#define NEUTRINO_MPOL_MF_MOVE (1 << 1)
+
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_NumaUtil_setAffinity0 (JNIEnv *env, jclass clazz, jlongArray cpus) {
+    cpu_set_t set;
+    CPU_ZERO(&set);
+
+    // Each element contains 64 bits of the CPU set
+    auto length = env->GetArrayLength(cpus);
+    auto words = env->GetLongArrayElements(cpus, nullptr);
+    for (jsize word = 0; word < length; word++) {
+        for (int bit = 0; bit < 64; bit++) {
+            auto cpu = word * 64 + bit;
+            if (cpu < CPU_SETSIZE && (static_cast<unsigned long long>(words[word]) >> bit) & 1) {
+                CPU_SET(cpu, &set);
+            }
+        }
+    }
+
+    env->ReleaseLongArrayElements(cpus, words, JNI_ABORT);
+
+    // Zero selects the calling thread
+    return sched_setaffinity(0, sizeof(set), &set);
+}
+
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_NumaUtil_bind0 (JNIEnv *env, jclass clazz, jlong address, jlong length, jlong nodeMask) {
+    unsigned long mask = static_cast<unsigned long>(nodeMask);
+
+    // The maximum node number is passed plus one, like libnuma does
+    return syscall(SYS_mbind, reinterpret_cast<void*>(address), static_cast<unsigned long>(length), NEUTRINO_MPOL_BIND, &mask, sizeof(mask) * 8 + 1, NEUTRINO_MPOL_MF_MOVE);
+}
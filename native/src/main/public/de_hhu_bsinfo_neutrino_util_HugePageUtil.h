@@ -0,0 +1,49 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class de_hhu_bsinfo_neutrino_util_HugePageUtil */
+
+#ifndef _Included_de_hhu_bsinfo_neutrino_util_HugePageUtil
+#define _Included_de_hhu_bsinfo_neutrino_util_HugePageUtil
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef de_hhu_bsinfo_neutrino_util_HugePageUtil_HUGE_PAGE_SIZE
+#define de_hhu_bsinfo_neutrino_util_HugePageUtil_HUGE_PAGE_SIZE 2097152L
+#undef de_hhu_bsinfo_neutrino_util_HugePageUtil_MAP_FAILED
+#define de_hhu_bsinfo_neutrino_util_HugePageUtil_MAP_FAILED -1LL
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_HugePageUtil
+ * Method:    mapHugeTlb0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_mapHugeTlb0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_HugePageUtil
+ * Method:    mapTransparent0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_mapTransparent0
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_HugePageUtil
+ * Method:    unmap0
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_unmap0
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_HugePageUtil
+ * Method:    wrap0
+ * Signature: (JI)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_de_hhu_bsinfo_neutrino_util_HugePageUtil_wrap0
+  (JNIEnv *, jclass, jlong, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,35 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class de_hhu_bsinfo_neutrino_util_NumaUtil */
+
+#ifndef _Included_de_hhu_bsinfo_neutrino_util_NumaUtil
+#define _Included_de_hhu_bsinfo_neutrino_util_NumaUtil
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef de_hhu_bsinfo_neutrino_util_NumaUtil_STATUS_OK
+#define de_hhu_bsinfo_neutrino_util_NumaUtil_STATUS_OK 0L
+#undef de_hhu_bsinfo_neutrino_util_NumaUtil_UNKNOWN_NODE
+#define de_hhu_bsinfo_neutrino_util_NumaUtil_UNKNOWN_NODE -1L
+#undef de_hhu_bsinfo_neutrino_util_NumaUtil_MAX_NODES
+#define de_hhu_bsinfo_neutrino_util_NumaUtil_MAX_NODES 64L
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_NumaUtil
+ * Method:    setAffinity0
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_NumaUtil_setAffinity0
+  (JNIEnv *, jclass, jlongArray);
+
+/*
+ * Class:     de_hhu_bsinfo_neutrino_util_NumaUtil
+ * Method:    bind0
+ * Signature: (JJJ)I
+ */
+JNIEXPORT jint JNICALL Java_de_hhu_bsinfo_neutrino_util_NumaUtil_bind0
+  (JNIEnv *, jclass, jlong, jlong, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif